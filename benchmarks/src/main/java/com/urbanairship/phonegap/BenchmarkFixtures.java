@@ -0,0 +1,73 @@
+package com.urbanairship.phonegap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaWebView;
+import org.json.JSONArray;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import com.urbanairship.push.PushManager;
+
+/**
+ * Builds plugins, intents and payloads on top of the JVM stand-ins.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    static final class StandInCordova implements CordovaInterface {
+        private final Activity activity = new Activity();
+        private final ExecutorService threadPool = Executors.newCachedThreadPool();
+
+        StandInCordova() {
+            Intent launch = new Intent();
+            launch.putExtra("com.urbanairship.development_app_key", "benchmark-key");
+            launch.putExtra("com.urbanairship.development_app_secret", "benchmark-secret");
+            launch.putExtra("com.urbanairship.in_production", "false");
+            activity.setIntent(launch);
+        }
+
+        @Override
+        public Activity getActivity() {
+            return activity;
+        }
+
+        @Override
+        public ExecutorService getThreadPool() {
+            return threadPool;
+        }
+    }
+
+    /**
+     * Creates an initialized plugin that has completed takeOff. Only the
+     * first plugin created in a JVM becomes the shared instance that
+     * receives events.
+     */
+    static PushNotificationPlugin takenOffPlugin(CordovaWebView webView) {
+        PushNotificationPlugin plugin = new PushNotificationPlugin();
+        plugin.initialize(new StandInCordova(), webView);
+        plugin.takeOff(new JSONArray(), new CallbackContext("takeOff", webView));
+        return plugin;
+    }
+
+    static Intent pushIntent(String pushId, String alert, int extrasCount) {
+        Intent intent = new Intent(PushManager.ACTION_PUSH_RECEIVED);
+        intent.putExtra(PushManager.EXTRA_PUSH_ID, pushId);
+        intent.putExtra(PushManager.EXTRA_NOTIFICATION_ID, 1);
+        intent.putExtra("collapse_key", "do_not_collapse");
+        intent.putExtra("from", "1234567890");
+        if (alert != null) {
+            intent.putExtra(PushManager.EXTRA_ALERT, alert);
+        }
+        for (int i = 0; i < extrasCount; i++) {
+            intent.putExtra("key" + i, "value-" + i + "-abcdefghij");
+        }
+        return intent;
+    }
+}
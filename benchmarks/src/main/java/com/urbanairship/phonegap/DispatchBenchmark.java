@@ -0,0 +1,91 @@
+package com.urbanairship.phonegap;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Action dispatch in execute: the original list scan plus reflective invoke
+ * against the action table lookup. Both run the same action body
+ * synchronously, so the difference is the cost of dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    // The knownActions list execute used to scan
+    // @formatter:off
+    private static final List<String> KNOWN_ACTIONS = Arrays.asList(
+        "takeOff",
+        "isPushEnabled", "enablePush", "disablePush",
+        "getIncoming",
+        "getPushID",
+        "getTags", "setTags",
+        "getAlias", "setAlias",
+        "isSoundEnabled", "setSoundEnabled",
+        "isVibrateEnabled", "setVibrateEnabled",
+        "isQuietTimeEnabled", "setQuietTimeEnabled",
+        "getQuietTime", "setQuietTime",
+        "isInQuietTime",
+        "isLocationEnabled", "enableLocation", "disableLocation",
+        "recordCurrentLocation",
+        "enableBackgroundLocation", "disableBackgroundLocation"
+    );
+    // @formatter:on
+
+    // First and last entries of the old list
+    @Param({ "isPushEnabled", "disableBackgroundLocation" })
+    public String action;
+
+    private PushNotificationPlugin plugin;
+    private JSONArray data;
+    private CallbackContext callbackContext;
+
+    @Setup
+    public void setUp() {
+        CordovaWebView webView = new CordovaWebView();
+        plugin = BenchmarkFixtures.takenOffPlugin(webView);
+        data = new JSONArray();
+        callbackContext = new CallbackContext("dispatch", null);
+    }
+
+    @Benchmark
+    public Object reflectiveDispatch() throws Exception {
+        if (!KNOWN_ACTIONS.contains(action)) {
+            return null;
+        }
+        Method method = PushNotificationPlugin.class.getDeclaredMethod(action, JSONArray.class, CallbackContext.class);
+        method.invoke(plugin, data, callbackContext);
+        return callbackContext.getLastResult();
+    }
+
+    @Benchmark
+    public Object tableDispatch() {
+        PushNotificationPlugin.RegisteredAction registeredAction = plugin.findAction(action);
+        if (registeredAction == null) {
+            return null;
+        }
+        registeredAction.action.execute(data, callbackContext);
+        return callbackContext.getLastResult();
+    }
+}
@@ -0,0 +1,260 @@
+package com.urbanairship.phonegap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.cordova.CordovaWebView;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Bundle;
+
+/**
+ * Randomized check of JsonWriter against org.json, on a plain JVM. Builds
+ * documents from strings full of characters that need escaping (quotes,
+ * backslashes, control characters, '%', U+2028, U+2029 and surrogate pairs)
+ * and checks that:
+ *
+ * - JsonWriter output parses with org.json back to the values written;
+ * - rawValue keeps org.json output parsing to the same values;
+ * - push JSON from PushReceiver.getNotificationJson round trips;
+ * - the javascript: URL built by the loadUrl transport holds the same batch
+ *   and contains no raw '%', U+2028, U+2029 or control characters.
+ *
+ * Writers are reused across documents, as they are on the event path.
+ * Exits with status 1 on the first mismatch.
+ *
+ * Run with:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.urbanairship.phonegap.JsonWriterCheck [--iterations N] [--seed N]
+ */
+public final class JsonWriterCheck {
+
+    // Characters the escaping has to get right, mixed with plain text
+    private static final char[] SPECIAL = {
+        '"', '\\', '/', '\b', '\f', '\n', '\r', '\t', '\u0000', '\u001f', '\u007f',
+        '%', '\u2028', '\u2029', '\u00e9', '\u4e2d', '\ufeff', '<', '>', '\'', '{', '}', '[', ']', ':', ','
+    };
+
+    private final Random random;
+    private final JsonWriter writer = new JsonWriter(64);
+    private final EventTransport.LoadUrl transport = new EventTransport.LoadUrl(new CordovaWebView());
+
+    private long documents;
+
+    private JsonWriterCheck(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 10000;
+        long seed = 1;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                if ("--iterations".equals(args[i])) {
+                    iterations = Integer.parseInt(args[i + 1]);
+                } else if ("--seed".equals(args[i])) {
+                    seed = Long.parseLong(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --iterations N (default 10000), --seed N (default 1)");
+            System.exit(2);
+            return;
+        }
+
+        JsonWriterCheck check = new JsonWriterCheck(seed);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                check.checkValues();
+                check.checkRawValue();
+                check.checkScript();
+            }
+        } catch (AssertionError e) {
+            System.err.println("FAILED after " + check.documents + " documents (seed " + seed + "): " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        System.out.println("OK, " + check.documents + " documents checked (seed " + seed + ")");
+    }
+
+    // Strings, booleans, longs and nesting written directly
+    private void checkValues() throws JSONException {
+        String name = randomString();
+        String text = randomString();
+        long number = random.nextLong();
+        boolean flag = random.nextBoolean();
+        List<String> items = randomStrings();
+
+        writer.reset().beginObject()
+                .name("pair").beginObject().name(name).value(text).endObject()
+                .name("number").value(number)
+                .name("flag").value(flag)
+                .name("missing").value((String) null)
+                .name("items").beginArray();
+        for (String item : items) {
+            writer.value(item);
+        }
+        writer.endArray().name("empty").beginObject().endObject().endObject();
+        String json = written();
+
+        JSONObject parsed = new JSONObject(json);
+        expect(text.equals(parsed.getJSONObject("pair").getString(name)), "string value", json);
+        expect(parsed.getLong("number") == number, "long value", json);
+        expect(parsed.getBoolean("flag") == flag, "boolean value", json);
+        expect(parsed.isNull("missing"), "null value", json);
+        expect(toList(parsed.getJSONArray("items")).equals(items), "array values", json);
+        expect(parsed.getJSONObject("empty").length() == 0, "empty object", json);
+    }
+
+    // org.json output passed through rawValue
+    private void checkRawValue() throws JSONException {
+        JSONObject original = new JSONObject();
+        for (String key : randomStrings()) {
+            original.put(key, randomString());
+        }
+        String encoded = original.toString();
+
+        writer.reset().beginArray().value(randomString()).rawValue(encoded).endArray();
+        String json = written();
+
+        JSONObject parsed = new JSONArray(json).getJSONObject(1);
+        expect(toMap(parsed).equals(toMap(original)), "raw value", json);
+    }
+
+    // Push JSON through the loadUrl transport, the way a push reaches the WebView
+    private void checkScript() throws JSONException {
+        List<EventDispatcher.Event> batch = new ArrayList<EventDispatcher.Event>();
+        List<Map<String, String>> expectedExtras = new ArrayList<Map<String, String>>();
+        List<String> alerts = new ArrayList<String>();
+
+        int events = 1 + random.nextInt(5);
+        for (int i = 0; i < events; i++) {
+            String alert = random.nextInt(4) == 0 ? null : randomString();
+            Bundle extras = new Bundle();
+            Map<String, String> expected = new LinkedHashMap<String, String>();
+            for (String key : randomStrings()) {
+                String value = randomString();
+                extras.putString(key, value);
+                expected.put(key, value);
+            }
+
+            batch.add(new EventDispatcher.Event("urbanairship.push", PushReceiver.getNotificationJson(alert, extras)));
+            expectedExtras.add(expected);
+            alerts.add(alert);
+        }
+
+        String script = transport.buildScript(batch);
+        documents++;
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (c < 0x20 || c == '%' || c == '\u2028' || c == '\u2029') {
+                expect(false, "unescaped " + describe(String.valueOf(c)) + " in script", script);
+            }
+        }
+
+        // The batch is the argument of the function call that starts the script
+        int start = script.indexOf("}})(") + 4;
+        expect(start >= 4 && script.endsWith(");"), "script shape", script);
+        JSONArray parsed = new JSONArray(script.substring(start, script.length() - 2));
+        expect(parsed.length() == events, "batch size", script);
+
+        for (int i = 0; i < events; i++) {
+            JSONArray event = parsed.getJSONArray(i);
+            expect("urbanairship.push".equals(event.getString(0)), "event name", script);
+
+            JSONObject push = event.getJSONObject(1);
+            String alert = alerts.get(i);
+            expect(alert == null ? !push.has("message") : alert.equals(push.getString("message")), "alert", script);
+            expect(toMap(push.getJSONObject("extras")).equals(expectedExtras.get(i)), "extras", script);
+        }
+    }
+
+    private String written() {
+        String json = writer.toString();
+        writer.trim();
+        documents++;
+        return json;
+    }
+
+    private List<String> randomStrings() {
+        int count = random.nextInt(6);
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(randomString());
+        }
+        return strings;
+    }
+
+    private String randomString() {
+        int length = random.nextInt(4) == 0 ? random.nextInt(400) : random.nextInt(24);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                builder.append((char) (' ' + random.nextInt(95)));
+            } else if (kind < 8) {
+                builder.append(SPECIAL[random.nextInt(SPECIAL.length)]);
+            } else if (kind < 9) {
+                builder.append((char) random.nextInt(0x20));
+            } else {
+                builder.appendCodePoint(0x10000 + random.nextInt(0xfffff));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static List<String> toList(JSONArray array) throws JSONException {
+        List<String> list = new ArrayList<String>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+
+    private static Map<String, String> toMap(JSONObject object) throws JSONException {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        Iterator<?> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            map.put(key, object.getString(key));
+        }
+        return map;
+    }
+
+    private static void expect(boolean condition, String what, String document) {
+        if (!condition) {
+            throw new AssertionError(what + " mismatch in " + describe(document));
+        }
+    }
+
+    // Escapes everything outside printable ASCII so failures can be read
+    private static String describe(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c < 0x7f) {
+                builder.append(c);
+            } else {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,553 @@
+package com.urbanairship.phonegap;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.urbanairship.push.PushManager;
+
+/**
+ * Drives PushReceiver.onReceive with a stream of push, open and registration
+ * broadcasts and follows each push through to the WebView stand-in, on a
+ * plain JVM. The stream is either synthetic, paced at a fixed rate, or
+ * replayed from a file of recorded broadcasts.
+ *
+ * Reports the end-to-end latency from onReceive to loadUrl for each push,
+ * pushes that never reached the WebView, duplicates dropped by the receiver,
+ * and heap and GC activity over the run.
+ *
+ * Run with:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.urbanairship.phonegap.LoadGenerator [options]
+ */
+public final class LoadGenerator {
+
+    // Extra carrying the sequence number used to match deliveries to sends
+    static final String SEQUENCE_EXTRA = "loadgen_seq";
+
+    private static final String PUSH = "push";
+    private static final String OPEN = "open";
+    private static final String REGISTRATION = "registration";
+
+    private static final long DRAIN_TIMEOUT_MS = 30000;
+    private static final long HEAP_SAMPLE_INTERVAL = 500;
+
+    private final Options options;
+    private final Context context = new Context();
+    private final CordovaWebView webView = new CordovaWebView();
+    private final Random random;
+
+    // Indexed by sequence number
+    private long[] sentAt;
+    private AtomicLongArray deliveredAt;
+
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong redelivered = new AtomicLong();
+    private final AtomicLong registrationsDelivered = new AtomicLong();
+    private final AtomicLong unmatchedDeliveries = new AtomicLong();
+
+    private long pushesSent;
+    private long duplicatesSent;
+    private long opensSent;
+    private long registrationsSent;
+    private long maxHeapUsed;
+
+    private LoadGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        new LoadGenerator(options).run();
+
+        // The receiver's worker thread is not a daemon
+        System.exit(0);
+    }
+
+    private void run() throws IOException, JSONException, InterruptedException {
+        List<Broadcast> broadcasts = options.replayFile != null ? readReplay(options.replayFile) : synthesize();
+        sentAt = new long[broadcasts.size()];
+        deliveredAt = new AtomicLongArray(broadcasts.size());
+
+        webView.setListener(new CordovaWebView.Listener() {
+            @Override
+            public void onLoadUrl(String url) {
+                onDelivered(url, System.nanoTime());
+            }
+
+            @Override
+            public void onPluginResult(PluginResult result, String callbackId) {
+            }
+        });
+        BenchmarkFixtures.takenOffPlugin(webView);
+        PushReceiver.recentPushIds.configure(options.tracked, RecentPushIds.DEFAULT_MAX_AGE_MS);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTimeMs();
+
+        BroadcastReceiver.FinishListener finishListener = new BroadcastReceiver.FinishListener() {
+            @Override
+            public void onFinish() {
+                finished.incrementAndGet();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < broadcasts.size(); i++) {
+            Broadcast broadcast = broadcasts.get(i);
+            long due = start + broadcast.offsetNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            // Redelivered pushes keep the send time of the original
+            if (!broadcast.duplicate) {
+                sentAt[broadcast.sequence] = System.nanoTime();
+            }
+
+            PushReceiver receiver = new PushReceiver();
+            receiver.setFinishListener(finishListener);
+            receiver.onReceive(context, broadcast.intent);
+
+            if (i % HEAP_SAMPLE_INTERVAL == 0) {
+                sampleHeap(memory);
+            }
+        }
+        long sendNanos = System.nanoTime() - start;
+
+        boolean drained = awaitDrain(broadcasts.size());
+        sampleHeap(memory);
+        long heapPeak = maxHeapUsed;
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        report(broadcasts, sendNanos, drained, heapBefore, heapPeak, heapAfter, gcCount() - gcCountBefore,
+                gcTimeMs() - gcTimeBefore);
+    }
+
+    private List<Broadcast> synthesize() {
+        List<Broadcast> broadcasts = new ArrayList<Broadcast>(options.count);
+        List<Broadcast> pushes = new ArrayList<Broadcast>();
+        long intervalNanos = options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / options.rate : 0;
+        int total = options.pushWeight + options.openWeight + options.registrationWeight;
+
+        for (int i = 0; i < options.count; i++) {
+            long offset = i * intervalNanos;
+            int pick = random.nextInt(total);
+            int extrasCount = options.minExtras + random.nextInt(options.maxExtras - options.minExtras + 1);
+
+            if (pick < options.pushWeight) {
+                if (!pushes.isEmpty() && random.nextDouble() < options.duplicateRatio) {
+                    int window = Math.min(options.duplicateWindow, pushes.size());
+                    Broadcast original = pushes.get(pushes.size() - 1 - random.nextInt(window));
+                    broadcasts.add(new Broadcast(offset, PUSH, original.intent, original.sequence, true));
+                } else {
+                    String alert = random.nextDouble() < options.silentRatio ? null : "Synthetic push " + i;
+                    Intent intent = BenchmarkFixtures.pushIntent("push-" + i, alert, extrasCount);
+                    intent.putExtra(SEQUENCE_EXTRA, Integer.toString(i));
+                    Broadcast push = new Broadcast(offset, PUSH, intent, i, false);
+                    pushes.add(push);
+                    broadcasts.add(push);
+                }
+            } else if (pick < options.pushWeight + options.openWeight) {
+                Intent intent = BenchmarkFixtures.pushIntent("push-" + i, "Synthetic push " + i, extrasCount);
+                intent.setAction(PushManager.ACTION_NOTIFICATION_OPENED);
+                broadcasts.add(new Broadcast(offset, OPEN, intent, i, false));
+            } else {
+                broadcasts.add(new Broadcast(offset, REGISTRATION,
+                        registrationIntent("apid-" + random.nextInt(4), random.nextInt(10) != 0), i, false));
+            }
+        }
+        return broadcasts;
+    }
+
+    /**
+     * Reads one broadcast per line as JSON:
+     *
+     * {"delayMs": 5, "type": "push", "pushId": "...", "alert": "...", "extras": {...}}
+     * {"delayMs": 5, "type": "open", "alert": "...", "extras": {...}}
+     * {"delayMs": 5, "type": "registration", "apid": "...", "valid": true}
+     *
+     * delayMs is the time since the previous line, divided by --speed. A push
+     * whose pushId was already replayed counts as a duplicate.
+     */
+    private List<Broadcast> readReplay(String file) throws IOException, JSONException {
+        List<Broadcast> broadcasts = new ArrayList<Broadcast>();
+        List<String> pushIds = new ArrayList<String>();
+        List<Broadcast> pushes = new ArrayList<Broadcast>();
+        long offset = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+
+                JSONObject entry = new JSONObject(line);
+                int sequence = broadcasts.size();
+                offset += (long) (TimeUnit.MILLISECONDS.toNanos(entry.optLong("delayMs", 0)) / options.speed);
+                String type = entry.optString("type", PUSH);
+
+                if (REGISTRATION.equals(type)) {
+                    broadcasts.add(new Broadcast(offset, REGISTRATION,
+                            registrationIntent(entry.optString("apid", null), entry.optBoolean("valid", true)), sequence, false));
+                    continue;
+                }
+
+                String pushId = entry.optString("pushId", "replay-" + sequence);
+                int original = PUSH.equals(type) ? pushIds.indexOf(pushId) : -1;
+                if (original >= 0) {
+                    Broadcast push = pushes.get(original);
+                    broadcasts.add(new Broadcast(offset, PUSH, push.intent, push.sequence, true));
+                    continue;
+                }
+
+                Intent intent = new Intent(PUSH.equals(type) ? PushManager.ACTION_PUSH_RECEIVED : PushManager.ACTION_NOTIFICATION_OPENED);
+                intent.putExtra(PushManager.EXTRA_PUSH_ID, pushId);
+                intent.putExtra(PushManager.EXTRA_NOTIFICATION_ID, sequence);
+                if (!entry.isNull("alert")) {
+                    intent.putExtra(PushManager.EXTRA_ALERT, entry.optString("alert"));
+                }
+                JSONObject extras = entry.optJSONObject("extras");
+                if (extras != null) {
+                    Iterator<?> keys = extras.keys();
+                    while (keys.hasNext()) {
+                        String key = (String) keys.next();
+                        intent.putExtra(key, extras.getString(key));
+                    }
+                }
+
+                Broadcast broadcast = new Broadcast(offset, PUSH.equals(type) ? PUSH : OPEN, intent, sequence, false);
+                if (PUSH.equals(type)) {
+                    intent.putExtra(SEQUENCE_EXTRA, Integer.toString(sequence));
+                    pushIds.add(pushId);
+                    pushes.add(broadcast);
+                }
+                broadcasts.add(broadcast);
+            }
+        } finally {
+            reader.close();
+        }
+        return broadcasts;
+    }
+
+    private static Intent registrationIntent(String apid, boolean valid) {
+        Intent intent = new Intent(PushManager.ACTION_REGISTRATION_FINISHED);
+        if (apid != null) {
+            intent.putExtra(PushManager.EXTRA_APID, apid);
+        }
+        intent.putExtra(PushManager.EXTRA_REGISTRATION_VALID, valid);
+        return intent;
+    }
+
+    // Called on the main looper with the script for one event batch
+    private void onDelivered(String url, long now) {
+        String marker = "\"" + SEQUENCE_EXTRA + "\":\"";
+        int index = url.indexOf(marker);
+        while (index >= 0) {
+            int start = index + marker.length();
+            int end = url.indexOf('"', start);
+            int sequence = Integer.parseInt(url.substring(start, end));
+            if (sequence < 0 || sequence >= sentAt.length) {
+                unmatchedDeliveries.incrementAndGet();
+            } else if (!deliveredAt.compareAndSet(sequence, 0, now)) {
+                redelivered.incrementAndGet();
+            }
+            index = url.indexOf(marker, end);
+        }
+
+        String registrationEvent = "\"urbanairship.registration\"";
+        index = url.indexOf(registrationEvent);
+        while (index >= 0) {
+            registrationsDelivered.incrementAndGet();
+            index = url.indexOf(registrationEvent, index + registrationEvent.length());
+        }
+    }
+
+    // Waits until every broadcast has finished and the WebView has gone quiet
+    private boolean awaitDrain(int broadcasts) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        long quietMs = Math.max(100, EventDispatcher.DEFAULT_FLUSH_INTERVAL_MS * 4);
+        long lastLoads = -1;
+        long quietSince = System.currentTimeMillis();
+
+        while (System.currentTimeMillis() < deadline) {
+            long loads = webView.getLoadUrlCount();
+            if (loads != lastLoads) {
+                lastLoads = loads;
+                quietSince = System.currentTimeMillis();
+            } else if (finished.get() >= broadcasts && System.currentTimeMillis() - quietSince >= quietMs) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private void sampleHeap(MemoryMXBean memory) {
+        maxHeapUsed = Math.max(maxHeapUsed, memory.getHeapMemoryUsage().getUsed());
+    }
+
+    private void report(List<Broadcast> broadcasts, long sendNanos, boolean drained, long heapBefore, long heapPeak,
+            long heapAfter, long gcCount, long gcTimeMs) {
+        long[] alertLatencies = new long[broadcasts.size()];
+        long[] dataLatencies = new long[broadcasts.size()];
+        int alertsDelivered = 0;
+        int dataDelivered = 0;
+        long dropped = 0;
+
+        for (Broadcast broadcast : broadcasts) {
+            if (PUSH.equals(broadcast.type)) {
+                if (broadcast.duplicate) {
+                    duplicatesSent++;
+                    continue;
+                }
+                pushesSent++;
+                long at = deliveredAt.get(broadcast.sequence);
+                if (at == 0) {
+                    dropped++;
+                } else if (broadcast.intent.getStringExtra(PushManager.EXTRA_ALERT) == null) {
+                    dataLatencies[dataDelivered++] = at - sentAt[broadcast.sequence];
+                } else {
+                    alertLatencies[alertsDelivered++] = at - sentAt[broadcast.sequence];
+                }
+            } else if (OPEN.equals(broadcast.type)) {
+                opensSent++;
+            } else {
+                registrationsSent++;
+            }
+        }
+        alertLatencies = Arrays.copyOf(alertLatencies, alertsDelivered);
+        Arrays.sort(alertLatencies);
+        dataLatencies = Arrays.copyOf(dataLatencies, dataDelivered);
+        Arrays.sort(dataLatencies);
+        int delivered = alertsDelivered + dataDelivered;
+
+        double seconds = sendNanos / 1e9;
+        System.out.println("Broadcasts");
+        System.out.printf("  sent            %d in %.2fs (%.0f/s)%n", broadcasts.size(), seconds, broadcasts.size() / seconds);
+        System.out.printf("  pushes          %d unique, %d duplicates%n", pushesSent, duplicatesSent);
+        System.out.printf("  opens           %d%n", opensSent);
+        System.out.printf("  registrations   %d%n", registrationsSent);
+        System.out.printf("  finished        %d%s%n", finished.get(), drained ? "" : " (timed out waiting for drain)");
+
+        System.out.println("Push delivery");
+        System.out.printf("  delivered       %d%n", delivered);
+        System.out.printf("  dropped         %d%n", dropped);
+        System.out.printf("  redelivered     %d%n", redelivered.get());
+        System.out.printf("  duplicates hit  %d%n", PushReceiver.recentPushIds.getHitCount());
+        System.out.printf("  filtered        %d%n", PushReceiver.subscriptions.getFilteredCount());
+        System.out.printf("  loadUrl calls   %d%n", webView.getLoadUrlCount());
+        if (unmatchedDeliveries.get() > 0) {
+            System.out.printf("  unmatched       %d%n", unmatchedDeliveries.get());
+        }
+
+        System.out.println("Push classes (received / raised / filtered / handled)");
+        for (String pushClass : new String[] { PluginStats.ALERT_PUSH, PluginStats.DATA_PUSH }) {
+            JSONObject pushObject = pushStats(pushClass);
+            System.out.printf("  %-15s %d / %d / %d / %d%n", pushClass, pushObject.optLong("received"),
+                    pushObject.optLong("raised"), pushObject.optLong("filtered"), pushObject.optLong("handled"));
+        }
+
+        System.out.println("Push latency, onReceive to loadUrl (ms)");
+        printLatencies(PluginStats.ALERT_PUSH, alertLatencies);
+        printLatencies(PluginStats.DATA_PUSH, dataLatencies);
+
+        System.out.println("Other events");
+        System.out.printf("  registrations   %d delivered, %d unchanged and not raised%n", registrationsDelivered.get(),
+                PushNotificationPlugin.registration.getUnchangedCount());
+        System.out.printf("  opens           %d activities started, %d overflowed the incoming queue%n",
+                context.getStartedActivityCount(), PushNotificationPlugin.incomingNotifications.getOverflowCount());
+
+        System.out.println("Heap");
+        System.out.printf("  before %.1f MB  peak %.1f MB  after %.1f MB  growth %.1f MB%n", heapBefore / 1048576.0,
+                heapPeak / 1048576.0, heapAfter / 1048576.0, (heapAfter - heapBefore) / 1048576.0);
+        System.out.printf("  %d collections, %d ms%n", gcCount, gcTimeMs);
+    }
+
+    private static JSONObject pushStats(String pushClass) {
+        try {
+            JSONObject pushes = PushNotificationPlugin.stats.toJSON().getJSONObject("pushes");
+            return pushes.has(pushClass) ? pushes.getJSONObject(pushClass) : new JSONObject();
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+
+    private static void printLatencies(String label, long[] sorted) {
+        System.out.printf("  %-6s p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n", label, percentileMs(sorted, 0.50),
+                percentileMs(sorted, 0.90), percentileMs(sorted, 0.99), percentileMs(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static final class Broadcast {
+        final long offsetNanos;
+        final String type;
+        final Intent intent;
+        // Sequence number of the push, shared by a push and its duplicates
+        final int sequence;
+        final boolean duplicate;
+
+        Broadcast(long offsetNanos, String type, Intent intent, int sequence, boolean duplicate) {
+            this.offsetNanos = offsetNanos;
+            this.type = type;
+            this.intent = intent;
+            this.sequence = sequence;
+            this.duplicate = duplicate;
+        }
+    }
+
+    static final class Options {
+        static final String USAGE = "Options:\n"
+                + "  --count N         broadcasts to send (default 10000)\n"
+                + "  --rate N          broadcasts per second, 0 for as fast as possible (default 1000)\n"
+                + "  --mix P:O:R       weights of push, open and registration broadcasts (default 90:5:5)\n"
+                + "  --extras MIN-MAX  extras per push (default 1-20)\n"
+                + "  --duplicates F    fraction of pushes redelivered with an earlier push ID (default 0.05)\n"
+                + "  --duplicate-window N\n"
+                + "                    redeliver one of the N most recent pushes (default 64)\n"
+                + "  --tracked N       push IDs the receiver keeps to drop redeliveries (default 1024)\n"
+                + "  --silent F        fraction of pushes sent without an alert, as data pushes (default 0.2)\n"
+                + "  --seed N          random seed (default 1)\n"
+                + "  --replay FILE     replay broadcasts from FILE instead of generating them\n"
+                + "  --speed F         replay speed multiplier (default 1)";
+
+        int count = 10000;
+        int rate = 1000;
+        int pushWeight = 90;
+        int openWeight = 5;
+        int registrationWeight = 5;
+        int minExtras = 1;
+        int maxExtras = 20;
+        double duplicateRatio = 0.05;
+        // Synthetic duplicates repeat one of this many most recent pushes, like
+        // a GCM redelivery would
+        int duplicateWindow = 64;
+        int tracked = RecentPushIds.DEFAULT_MAX_ENTRIES;
+        double silentRatio = 0.2;
+        long seed = 1;
+        String replayFile;
+        double speed = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+
+                try {
+                    if ("--count".equals(arg)) {
+                        options.count = Integer.parseInt(value);
+                    } else if ("--rate".equals(arg)) {
+                        options.rate = Integer.parseInt(value);
+                    } else if ("--mix".equals(arg)) {
+                        String[] parts = value.split(":");
+                        if (parts.length != 3) {
+                            throw new IllegalArgumentException("--mix takes push:open:registration weights");
+                        }
+                        options.pushWeight = Integer.parseInt(parts[0]);
+                        options.openWeight = Integer.parseInt(parts[1]);
+                        options.registrationWeight = Integer.parseInt(parts[2]);
+                    } else if ("--extras".equals(arg)) {
+                        String[] parts = value.split("-");
+                        options.minExtras = Integer.parseInt(parts[0]);
+                        options.maxExtras = Integer.parseInt(parts[parts.length - 1]);
+                    } else if ("--duplicates".equals(arg)) {
+                        options.duplicateRatio = Double.parseDouble(value);
+                    } else if ("--duplicate-window".equals(arg)) {
+                        options.duplicateWindow = Integer.parseInt(value);
+                    } else if ("--tracked".equals(arg)) {
+                        options.tracked = Integer.parseInt(value);
+                    } else if ("--silent".equals(arg)) {
+                        options.silentRatio = Double.parseDouble(value);
+                    } else if ("--seed".equals(arg)) {
+                        options.seed = Long.parseLong(value);
+                    } else if ("--replay".equals(arg)) {
+                        options.replayFile = value;
+                    } else if ("--speed".equals(arg)) {
+                        options.speed = Double.parseDouble(value);
+                    } else {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+                }
+            }
+
+            if (options.count < 0 || options.rate < 0 || options.speed <= 0 || options.minExtras < 0
+                    || options.duplicateWindow < 1 || options.tracked < 1
+                    || options.maxExtras < options.minExtras
+                    || options.pushWeight < 0 || options.openWeight < 0 || options.registrationWeight < 0
+                    || options.pushWeight + options.openWeight + options.registrationWeight <= 0) {
+                throw new IllegalArgumentException("Invalid options");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.urbanairship.phonegap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+
+import android.content.Intent;
+
+import com.urbanairship.push.PushManager;
+
+/**
+ * The per-push work between the receiver and the WebView: extracting extras
+ * from the intent, building the notification JSON and building the script
+ * that fires the event. Run with -prof gc to compare the allocation of the
+ * map-then-JSONObject path against the single-pass extractor, and of the
+ * loadUrl transport against the callback transport. originalPushScript and
+ * streamingPushScript compare the whole intent-to-script path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({ "1", "20", "200" })
+    public int extrasCount;
+
+    private Intent intent;
+    private Map<String, String> extras;
+    private String notificationJson;
+    private List<EventDispatcher.Event> batch;
+    private EventTransport.LoadUrl loadUrlTransport;
+    private EventTransport callbackTransport;
+
+    @Setup
+    public void setUp() {
+        intent = BenchmarkFixtures.pushIntent("push-id", "Your team just scored!", extrasCount);
+        extras = PushReceiver.getNotificationExtras(intent);
+        notificationJson = PushNotificationPlugin.notificationObject("Your team just scored!", extras).toString();
+        batch = Collections.singletonList(new EventDispatcher.Event("urbanairship.push", notificationJson));
+
+        CordovaWebView webView = new CordovaWebView();
+        loadUrlTransport = new EventTransport.LoadUrl(webView);
+        EventTransport.Callback callback = new EventTransport.Callback(loadUrlTransport);
+        callback.setCallbackContext(new CallbackContext("onEvent", webView));
+        callbackTransport = callback;
+    }
+
+    @Benchmark
+    public Map<String, String> getNotificationExtras() {
+        return PushReceiver.getNotificationExtras(intent);
+    }
+
+    // Extras map plus JSONObject, the path pushes took before the single-pass extractor
+    @Benchmark
+    public String mapThenNotificationObject() {
+        Map<String, String> extras = PushReceiver.getNotificationExtras(intent);
+        return PushNotificationPlugin.notificationObject(intent.getStringExtra(PushManager.EXTRA_ALERT), extras).toString();
+    }
+
+    @Benchmark
+    public String singlePassNotificationJson() {
+        return PushReceiver.getNotificationJson(intent.getStringExtra(PushManager.EXTRA_ALERT), intent.getExtras());
+    }
+
+    @Benchmark
+    public String notificationObject() {
+        return PushNotificationPlugin.notificationObject("Your team just scored!", extras).toString();
+    }
+
+    // The String.format template sendEvent used before events were batched
+    @Benchmark
+    public String sendEventFormat() {
+        return String.format("javascript:try{cordova.fireDocumentEvent('%s', %s);}catch(e){console.log('exception firing event %s from native');};",
+                "urbanairship.push", notificationJson, "urbanairship.push");
+    }
+
+    @Benchmark
+    public String sendEventBatchScript() {
+        return loadUrlTransport.buildScript(batch);
+    }
+
+    // Intent to script the original way: extras map, JSONObject, String.format template
+    @Benchmark
+    public String originalPushScript() {
+        Map<String, String> extras = PushReceiver.getNotificationExtras(intent);
+        String json = PushNotificationPlugin.notificationObject(intent.getStringExtra(PushManager.EXTRA_ALERT), extras).toString();
+        return String.format("javascript:try{cordova.fireDocumentEvent('%s', %s);}catch(e){console.log('exception firing event %s from native');};",
+                "urbanairship.push", json, "urbanairship.push");
+    }
+
+    // Intent to script with the streaming writer, as a single-event batch
+    @Benchmark
+    public String streamingPushScript() {
+        String json = PushReceiver.getNotificationJson(intent.getStringExtra(PushManager.EXTRA_ALERT), intent.getExtras());
+        return loadUrlTransport.buildScript(Collections.singletonList(new EventDispatcher.Event("urbanairship.push", json)));
+    }
+
+    @Benchmark
+    public void loadUrlTransport() {
+        loadUrlTransport.deliver(batch);
+    }
+
+    @Benchmark
+    public void callbackTransport() {
+        callbackTransport.deliver(batch);
+    }
+}
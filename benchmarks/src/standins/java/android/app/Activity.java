@@ -0,0 +1,31 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * JVM stand-in for an Android Activity with a fixed application and launch
+ * intent.
+ */
+public class Activity extends Context {
+
+    private final Application application = new Application();
+    private Intent intent = new Intent();
+
+    public Application getApplication() {
+        return application;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return application;
+    }
+
+    public Intent getIntent() {
+        return intent;
+    }
+
+    public void setIntent(Intent intent) {
+        this.intent = intent;
+    }
+}
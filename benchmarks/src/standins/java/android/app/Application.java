@@ -0,0 +1,9 @@
+package android.app;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in for the Android Application.
+ */
+public class Application extends Context {
+}
@@ -0,0 +1,38 @@
+package android.content;
+
+/**
+ * JVM stand-in for the Android BroadcastReceiver. goAsync returns a pending
+ * result whose finish is reported to an optional listener.
+ */
+public abstract class BroadcastReceiver {
+
+    public interface FinishListener {
+        void onFinish();
+    }
+
+    private FinishListener finishListener;
+
+    public abstract void onReceive(Context context, Intent intent);
+
+    public void setFinishListener(FinishListener finishListener) {
+        this.finishListener = finishListener;
+    }
+
+    public final PendingResult goAsync() {
+        return new PendingResult(finishListener);
+    }
+
+    public static class PendingResult {
+        private final FinishListener listener;
+
+        PendingResult(FinishListener listener) {
+            this.listener = listener;
+        }
+
+        public final void finish() {
+            if (listener != null) {
+                listener.onFinish();
+            }
+        }
+    }
+}
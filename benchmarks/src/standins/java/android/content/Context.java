@@ -0,0 +1,49 @@
+package android.content;
+
+import java.io.File;
+
+import android.content.pm.PackageManager;
+
+/**
+ * JVM stand-in for the Android Context. Files are kept in a temporary
+ * directory and started activities are only counted.
+ */
+public class Context {
+
+    private static final File FILES_DIR = createFilesDir();
+
+    private final PackageManager packageManager = new PackageManager();
+    private volatile int startedActivities = 0;
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getFilesDir() {
+        return FILES_DIR;
+    }
+
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    public void startActivity(Intent intent) {
+        startedActivities++;
+    }
+
+    public int getStartedActivityCount() {
+        return startedActivities;
+    }
+
+    private static File createFilesDir() {
+        try {
+            File dir = File.createTempFile("ua-phonegap", "");
+            dir.delete();
+            dir.mkdirs();
+            dir.deleteOnExit();
+            return dir;
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
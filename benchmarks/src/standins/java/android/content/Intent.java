@@ -0,0 +1,94 @@
+package android.content;
+
+import android.os.Bundle;
+
+/**
+ * JVM stand-in for an Android Intent holding an action and string extras.
+ */
+public class Intent {
+
+    public static final String CATEGORY_LAUNCHER = "android.intent.category.LAUNCHER";
+    public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+    public static final int FLAG_ACTIVITY_SINGLE_TOP = 0x20000000;
+
+    private String action;
+    private Bundle extras;
+    private int flags;
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent setAction(String action) {
+        this.action = action;
+        return this;
+    }
+
+    public Bundle getExtras() {
+        return extras != null ? new Bundle(extras) : null;
+    }
+
+    public Intent putExtra(String key, String value) {
+        bundle().putString(key, value);
+        return this;
+    }
+
+    public Intent putExtra(String key, int value) {
+        bundle().putInt(key, value);
+        return this;
+    }
+
+    public Intent putExtra(String key, boolean value) {
+        bundle().putBoolean(key, value);
+        return this;
+    }
+
+    public Intent putExtras(Bundle bundle) {
+        bundle().putAll(bundle);
+        return this;
+    }
+
+    public String getStringExtra(String key) {
+        return extras == null ? null : extras.getString(key);
+    }
+
+    public int getIntExtra(String key, int defaultValue) {
+        return extras == null ? defaultValue : extras.getInt(key, defaultValue);
+    }
+
+    public boolean getBooleanExtra(String key, boolean defaultValue) {
+        return extras == null ? defaultValue : extras.getBoolean(key, defaultValue);
+    }
+
+    public Intent addCategory(String category) {
+        return this;
+    }
+
+    public Intent setFlags(int flags) {
+        this.flags = flags;
+        return this;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    private Bundle bundle() {
+        if (extras == null) {
+            extras = new Bundle();
+        }
+        return extras;
+    }
+
+    @Override
+    public String toString() {
+        return "Intent { act=" + action + " extras=" + extras + " }";
+    }
+}
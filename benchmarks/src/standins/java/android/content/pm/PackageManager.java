@@ -0,0 +1,13 @@
+package android.content.pm;
+
+import android.content.Intent;
+
+/**
+ * JVM stand-in for the Android PackageManager.
+ */
+public class PackageManager {
+
+    public Intent getLaunchIntentForPackage(String packageName) {
+        return new Intent();
+    }
+}
@@ -0,0 +1,51 @@
+package android.location;
+
+/**
+ * JVM stand-in for an Android Location using a flat-earth distance.
+ */
+public class Location {
+
+    private final String provider;
+    private double latitude;
+    private double longitude;
+    private long time = System.currentTimeMillis();
+
+    public Location(String provider) {
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public float distanceTo(Location other) {
+        double metersPerDegree = 111320.0;
+        double dLat = (other.latitude - latitude) * metersPerDegree;
+        double dLon = (other.longitude - longitude) * metersPerDegree * Math.cos(Math.toRadians(latitude));
+        return (float) Math.sqrt(dLat * dLat + dLon * dLon);
+    }
+}
@@ -0,0 +1,70 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM stand-in for an Android Handler that runs work on its Looper's thread.
+ */
+public class Handler {
+
+    private final Looper looper;
+    private final Map<Runnable, List<Future<?>>> posted = new HashMap<Runnable, List<Future<?>>>();
+
+    public Handler() {
+        this(Looper.getMainLooper());
+    }
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public boolean post(Runnable runnable) {
+        return postDelayed(runnable, 0);
+    }
+
+    public boolean postDelayed(final Runnable runnable, long delayMillis) {
+        synchronized (posted) {
+            List<Future<?>> futures = posted.get(runnable);
+            if (futures == null) {
+                futures = new ArrayList<Future<?>>();
+                posted.put(runnable, futures);
+            }
+
+            final List<Future<?>> owner = futures;
+            final Future<?>[] self = new Future<?>[1];
+            Runnable wrapper = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (posted) {
+                        owner.remove(self[0]);
+                    }
+                    runnable.run();
+                }
+            };
+            Future<?> future = looper.executor.schedule(wrapper, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+            self[0] = future;
+            futures.add(future);
+        }
+        return true;
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+        synchronized (posted) {
+            List<Future<?>> futures = posted.remove(runnable);
+            if (futures != null) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    public Looper getLooper() {
+        return looper;
+    }
+}
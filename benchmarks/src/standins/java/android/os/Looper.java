@@ -0,0 +1,37 @@
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JVM stand-in for an Android Looper. The main looper is a single daemon
+ * thread that runs posted work in order.
+ */
+public class Looper {
+
+    private static final Looper MAIN = new Looper("main");
+
+    final ScheduledExecutorService executor;
+    private volatile Thread thread;
+
+    private Looper(final String name) {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                Looper.this.thread = thread;
+                return thread;
+            }
+        });
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+}
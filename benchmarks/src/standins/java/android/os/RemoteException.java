@@ -0,0 +1,8 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android RemoteException.
+ */
+public class RemoteException extends Exception {
+    private static final long serialVersionUID = 1L;
+}
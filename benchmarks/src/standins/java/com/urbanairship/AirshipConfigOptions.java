@@ -0,0 +1,33 @@
+package com.urbanairship;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in for the Urban Airship AirshipConfigOptions.
+ */
+public class AirshipConfigOptions {
+
+    public String productionAppKey;
+    public String productionAppSecret;
+    public String developmentAppKey;
+    public String developmentAppSecret;
+    public String gcmSender;
+    public boolean inProduction = false;
+    public boolean pushServiceEnabled = true;
+    public LocationOptions locationOptions = new LocationOptions();
+    public int developmentLogLevel;
+    public int productionLogLevel;
+    public int minSdkVersion;
+
+    public static AirshipConfigOptions loadDefaultOptions(Context context) {
+        return new AirshipConfigOptions();
+    }
+
+    public String getAppKey() {
+        return inProduction ? productionAppKey : developmentAppKey;
+    }
+
+    public int getLoggerLevel() {
+        return inProduction ? productionLogLevel : developmentLogLevel;
+    }
+}
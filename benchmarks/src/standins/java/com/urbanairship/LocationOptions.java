@@ -0,0 +1,9 @@
+package com.urbanairship;
+
+/**
+ * JVM stand-in for the Urban Airship LocationOptions.
+ */
+public class LocationOptions {
+
+    public boolean locationServiceEnabled = false;
+}
@@ -0,0 +1,61 @@
+package com.urbanairship;
+
+import android.util.Log;
+
+/**
+ * JVM stand-in for the Urban Airship Logger. Like the library, it checks
+ * logLevel before handing a message to Log.
+ */
+public class Logger {
+
+    public static int logLevel = Log.ERROR;
+    public static String TAG = "UALib";
+
+    public static void verbose(String s) {
+        if (logLevel <= Log.VERBOSE && s != null) {
+            Log.v(TAG, s);
+        }
+    }
+
+    public static void debug(String s) {
+        if (logLevel <= Log.DEBUG && s != null) {
+            Log.d(TAG, s);
+        }
+    }
+
+    public static void info(String s) {
+        if (logLevel <= Log.INFO && s != null) {
+            Log.i(TAG, s);
+        }
+    }
+
+    public static void warn(String s) {
+        if (logLevel <= Log.WARN && s != null) {
+            Log.w(TAG, s);
+        }
+    }
+
+    public static void warn(String s, Throwable t) {
+        warn(s);
+    }
+
+    public static void warn(Throwable t) {
+        warn(String.valueOf(t));
+    }
+
+    public static void error(String s) {
+        if (logLevel <= Log.ERROR && s != null) {
+            Log.e(TAG, s);
+        }
+    }
+
+    public static void error(Throwable t) {
+        error(String.valueOf(t));
+    }
+
+    public static void error(String s, Throwable t) {
+        if (logLevel <= Log.ERROR && s != null) {
+            Log.e(TAG, s, t);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.urbanairship;
+
+import android.app.Application;
+import android.content.Context;
+
+/**
+ * JVM stand-in for UAirship. takeOff only records the options.
+ */
+public class UAirship {
+
+    private static final UAirship shared = new UAirship();
+
+    private volatile Context applicationContext;
+    private volatile AirshipConfigOptions airshipConfigOptions = new AirshipConfigOptions();
+    private volatile boolean flying = false;
+
+    public static UAirship shared() {
+        return shared;
+    }
+
+    public static synchronized void takeOff(Application application, AirshipConfigOptions options) {
+        if (shared.flying) {
+            Logger.error("You can only call UAirship.takeOff once.");
+            return;
+        }
+
+        shared.applicationContext = application;
+        shared.airshipConfigOptions = options;
+        shared.flying = true;
+    }
+
+    public static String getPackageName() {
+        return "com.urbanairship.phonegap.benchmark";
+    }
+
+    public Context getApplicationContext() {
+        return applicationContext;
+    }
+
+    public AirshipConfigOptions getAirshipConfigOptions() {
+        return airshipConfigOptions;
+    }
+
+    public boolean isFlying() {
+        return flying;
+    }
+}
@@ -0,0 +1,18 @@
+package com.urbanairship.location;
+
+/**
+ * JVM stand-in for the Urban Airship LocationPreferences.
+ */
+public class LocationPreferences {
+
+    volatile boolean locationEnabled = false;
+    volatile boolean backgroundLocationEnabled = false;
+
+    public boolean isLocationEnabled() {
+        return locationEnabled;
+    }
+
+    public boolean isBackgroundLocationEnabled() {
+        return backgroundLocationEnabled;
+    }
+}
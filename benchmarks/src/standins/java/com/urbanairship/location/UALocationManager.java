@@ -0,0 +1,94 @@
+package com.urbanairship.location;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.location.Location;
+import android.os.RemoteException;
+
+import com.urbanairship.util.ServiceNotBoundException;
+
+/**
+ * JVM stand-in for the Urban Airship UALocationManager. Recording a location
+ * fails with ServiceNotBoundException until bindService is called, like the
+ * library does before its service connects.
+ */
+public class UALocationManager {
+
+    private static final UALocationManager shared = new UALocationManager();
+
+    private final LocationPreferences preferences = new LocationPreferences();
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong bindCount = new AtomicLong();
+    private volatile boolean bound = false;
+    private volatile Location location = new Location("standin");
+
+    public static UALocationManager shared() {
+        return shared;
+    }
+
+    public LocationPreferences getPreferences() {
+        return preferences;
+    }
+
+    public static void enableLocation() {
+        shared.preferences.locationEnabled = true;
+    }
+
+    public static void disableLocation() {
+        shared.preferences.locationEnabled = false;
+    }
+
+    public static void enableBackgroundLocation() {
+        shared.preferences.backgroundLocationEnabled = true;
+    }
+
+    public static void disableBackgroundLocation() {
+        shared.preferences.backgroundLocationEnabled = false;
+    }
+
+    public static void bindService() {
+        shared.bindCount.incrementAndGet();
+        shared.bound = true;
+    }
+
+    public static void unbindService() {
+        shared.bound = false;
+    }
+
+    public static boolean isServiceBound() {
+        return shared.bound;
+    }
+
+    public Location getLocation() throws RemoteException, ServiceNotBoundException {
+        requireBound();
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public void recordLocation(Location location) throws RemoteException, ServiceNotBoundException {
+        requireBound();
+        recordedCount.incrementAndGet();
+    }
+
+    public void recordCurrentLocation() throws RemoteException, ServiceNotBoundException {
+        requireBound();
+        recordedCount.incrementAndGet();
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    public long getBindCount() {
+        return bindCount.get();
+    }
+
+    private void requireBound() throws ServiceNotBoundException {
+        if (!bound) {
+            throw new ServiceNotBoundException("Location service is not bound");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.urbanairship.push;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.BroadcastReceiver;
+
+/**
+ * JVM stand-in for the Urban Airship PushManager. Registration state is held
+ * in memory and each registration update is counted.
+ */
+public class PushManager {
+
+    public static final String EXTRA_ALERT = "com.urbanairship.push.ALERT";
+    public static final String EXTRA_PUSH_ID = "com.urbanairship.push.PUSH_ID";
+    public static final String ACTION_REGISTRATION_FINISHED = "com.urbanairship.push.REGISTRATION_FINISHED";
+    public static final String ACTION_PUSH_RECEIVED = "com.urbanairship.push.PUSH_RECEIVED";
+    public static final String ACTION_NOTIFICATION_OPENED = "com.urbanairship.push.NOTIFICATION_OPENED";
+    public static final String EXTRA_NOTIFICATION_ID = "com.urbanairship.push.NOTIFICATION_ID";
+    public static final String EXTRA_APID = "com.urbanairship.push.APID";
+    public static final String EXTRA_REGISTRATION_VALID = "com.urbanairship.push.REGISTRATION_VALID";
+    public static final String EXTRA_REGISTRATION_ERROR = "com.urbanairship.push.REGISTRATION_ERROR";
+
+    private static final PushManager shared = new PushManager();
+
+    private final PushPreferences preferences = new PushPreferences();
+    private final AtomicLong registrationUpdates = new AtomicLong();
+    private volatile Set<String> tags = new HashSet<String>();
+    private volatile String alias;
+    private volatile String apid = "00000000-0000-0000-0000-000000000000";
+    private volatile Class<?> intentReceiver;
+
+    public static PushManager shared() {
+        return shared;
+    }
+
+    public static void enablePush() {
+        shared.preferences.setPushEnabled(true);
+    }
+
+    public static void disablePush() {
+        shared.preferences.setPushEnabled(false);
+    }
+
+    public void setIntentReceiver(Class<? extends BroadcastReceiver> receiver) {
+        intentReceiver = receiver;
+    }
+
+    public Class<?> getIntentReceiver() {
+        return intentReceiver;
+    }
+
+    public PushPreferences getPreferences() {
+        return preferences;
+    }
+
+    public void setAliasAndTags(String alias, Set<String> tags) {
+        this.alias = alias;
+        this.tags = new HashSet<String>(tags);
+        registrationUpdates.incrementAndGet();
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+        registrationUpdates.incrementAndGet();
+    }
+
+    public void setTags(Set<String> tags) {
+        this.tags = new HashSet<String>(tags);
+        registrationUpdates.incrementAndGet();
+    }
+
+    public String getAPID() {
+        return apid;
+    }
+
+    public void setAPID(String apid) {
+        this.apid = apid;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public Set<String> getTags() {
+        return new HashSet<String>(tags);
+    }
+
+    public long getRegistrationUpdateCount() {
+        return registrationUpdates.get();
+    }
+}
@@ -0,0 +1,59 @@
+package com.urbanairship.push;
+
+import java.util.Date;
+
+/**
+ * JVM stand-in for the Urban Airship PushPreferences, held in memory.
+ */
+public class PushPreferences {
+
+    private volatile boolean pushEnabled = false;
+    private volatile boolean soundEnabled = true;
+    private volatile boolean vibrateEnabled = false;
+    private volatile boolean quietTimeEnabled = false;
+    private volatile Date[] quietTimeInterval;
+
+    public boolean isPushEnabled() {
+        return pushEnabled;
+    }
+
+    void setPushEnabled(boolean enabled) {
+        pushEnabled = enabled;
+    }
+
+    public boolean isSoundEnabled() {
+        return soundEnabled;
+    }
+
+    public void setSoundEnabled(boolean enabled) {
+        soundEnabled = enabled;
+    }
+
+    public boolean isVibrateEnabled() {
+        return vibrateEnabled;
+    }
+
+    public void setVibrateEnabled(boolean enabled) {
+        vibrateEnabled = enabled;
+    }
+
+    public boolean isQuietTimeEnabled() {
+        return quietTimeEnabled;
+    }
+
+    public void setQuietTimeEnabled(boolean enabled) {
+        quietTimeEnabled = enabled;
+    }
+
+    public boolean isInQuietTime() {
+        return false;
+    }
+
+    public Date[] getQuietTimeInterval() {
+        return quietTimeInterval;
+    }
+
+    public void setQuietTimeInterval(Date start, Date end) {
+        quietTimeInterval = new Date[] { start, end };
+    }
+}
@@ -0,0 +1,12 @@
+package com.urbanairship.util;
+
+/**
+ * JVM stand-in for the Urban Airship ServiceNotBoundException.
+ */
+public class ServiceNotBoundException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ServiceNotBoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,73 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * JVM stand-in for the Cordova 3 CallbackContext. Results are forwarded to
+ * the web view like Cordova does, and the last one is kept.
+ */
+public class CallbackContext {
+
+    private final String callbackId;
+    private final CordovaWebView webView;
+    private volatile boolean finished;
+    private volatile PluginResult lastResult;
+
+    public CallbackContext(String callbackId, CordovaWebView webView) {
+        this.callbackId = callbackId;
+        this.webView = webView;
+    }
+
+    public String getCallbackId() {
+        return callbackId;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public PluginResult getLastResult() {
+        return lastResult;
+    }
+
+    public void sendPluginResult(PluginResult pluginResult) {
+        finished = !pluginResult.getKeepCallback();
+        lastResult = pluginResult;
+        if (webView != null) {
+            webView.sendPluginResult(pluginResult, callbackId);
+        }
+    }
+
+    public void success() {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    public void success(int message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONArray message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void error(String message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(int message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(JSONObject message) {
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+}
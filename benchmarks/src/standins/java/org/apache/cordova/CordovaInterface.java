@@ -0,0 +1,15 @@
+package org.apache.cordova;
+
+import java.util.concurrent.ExecutorService;
+
+import android.app.Activity;
+
+/**
+ * JVM stand-in for the Cordova 3 CordovaInterface.
+ */
+public interface CordovaInterface {
+
+    Activity getActivity();
+
+    ExecutorService getThreadPool();
+}
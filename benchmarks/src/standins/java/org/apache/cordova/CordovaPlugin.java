@@ -0,0 +1,44 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import android.content.Intent;
+
+/**
+ * JVM stand-in for the Cordova 3 CordovaPlugin.
+ */
+public class CordovaPlugin {
+
+    public String id;
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        this.cordova = cordova;
+        this.webView = webView;
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        return false;
+    }
+
+    public void onPause(boolean multitasking) {
+    }
+
+    public void onResume(boolean multitasking) {
+    }
+
+    public void onNewIntent(Intent intent) {
+    }
+
+    public void onDestroy() {
+    }
+
+    public Object onMessage(String id, Object data) {
+        return null;
+    }
+
+    public void onReset() {
+    }
+}
@@ -0,0 +1,55 @@
+package org.apache.cordova;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM stand-in for the Cordova 3 CordovaWebView. Loaded URLs and plugin
+ * results are counted and passed to an optional listener instead of being
+ * evaluated.
+ */
+public class CordovaWebView {
+
+    public interface Listener {
+        void onLoadUrl(String url);
+
+        void onPluginResult(PluginResult result, String callbackId);
+    }
+
+    private final AtomicLong loadUrlCount = new AtomicLong();
+    private final AtomicLong pluginResultCount = new AtomicLong();
+    private volatile Listener listener;
+    private volatile String lastUrl;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void loadUrl(String url) {
+        loadUrlCount.incrementAndGet();
+        lastUrl = url;
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onLoadUrl(url);
+        }
+    }
+
+    public void sendPluginResult(PluginResult result, String callbackId) {
+        pluginResultCount.incrementAndGet();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onPluginResult(result, callbackId);
+        }
+    }
+
+    public long getLoadUrlCount() {
+        return loadUrlCount.get();
+    }
+
+    public long getPluginResultCount() {
+        return pluginResultCount.get();
+    }
+
+    public String getLastUrl() {
+        return lastUrl;
+    }
+}
@@ -0,0 +1,65 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * JVM stand-in for the Cordova 3 PluginResult. Like Cordova, the message is
+ * encoded to a JSON string when the result is created.
+ */
+public class PluginResult {
+
+    public enum Status {
+        NO_RESULT, OK, CLASS_NOT_FOUND_EXCEPTION, ILLEGAL_ACCESS_EXCEPTION, INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION, IO_EXCEPTION, INVALID_ACTION, JSON_EXCEPTION, ERROR
+    }
+
+    private final Status status;
+    private final String encodedMessage;
+    private boolean keepCallback = false;
+
+    public PluginResult(Status status) {
+        this(status, (String) null);
+    }
+
+    public PluginResult(Status status, String message) {
+        this.status = status;
+        this.encodedMessage = message == null ? "null" : JSONObject.quote(message);
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this.status = status;
+        this.encodedMessage = message.toString();
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this.status = status;
+        this.encodedMessage = message.toString();
+    }
+
+    public PluginResult(Status status, int message) {
+        this.status = status;
+        this.encodedMessage = String.valueOf(message);
+    }
+
+    public PluginResult(Status status, boolean message) {
+        this.status = status;
+        this.encodedMessage = String.valueOf(message);
+    }
+
+    public void setKeepCallback(boolean keepCallback) {
+        this.keepCallback = keepCallback;
+    }
+
+    public boolean getKeepCallback() {
+        return keepCallback;
+    }
+
+    public int getStatus() {
+        return status.ordinal();
+    }
+
+    public String getMessage() {
+        return encodedMessage;
+    }
+}
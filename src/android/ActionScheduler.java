@@ -0,0 +1,116 @@
+package com.urbanairship.phonegap;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.urbanairship.Logger;
+
+/**
+ * Runs plugin actions on separate single-threaded lanes so that slow
+ * lifecycle calls do not hold up cheap preference reads. Each lane has a
+ * bounded queue; work submitted to a full lane is rejected.
+ */
+class ActionScheduler {
+
+    enum Lane {
+        // Preference and state reads
+        READ,
+        // Serialized writes to prefs, tags and alias
+        WRITE,
+        // takeOff, push/location enablement and location recording
+        LIFECYCLE
+    }
+
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<Lane, LaneExecutor>(Lane.class);
+
+    ActionScheduler() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    ActionScheduler(int queueCapacity) {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneExecutor(lane, queueCapacity));
+        }
+    }
+
+    /**
+     * Queues a task on the given lane.
+     *
+     * @return false if the lane queue is full or the scheduler is shut down.
+     */
+    boolean submit(Lane lane, Runnable task) {
+        LaneExecutor executor = lanes.get(lane);
+        executor.submitted.incrementAndGet();
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            executor.rejected.incrementAndGet();
+            Logger.warn("Rejected action on " + lane + " lane, queue depth: " + executor.getQueue().size());
+            return false;
+        }
+
+        int depth = executor.getQueue().size();
+        long max = executor.maxQueueDepth.get();
+        while (depth > max && !executor.maxQueueDepth.compareAndSet(max, depth)) {
+            max = executor.maxQueueDepth.get();
+        }
+        return true;
+    }
+
+    int getQueueDepth(Lane lane) {
+        return lanes.get(lane).getQueue().size();
+    }
+
+    long getMaxQueueDepth(Lane lane) {
+        return lanes.get(lane).maxQueueDepth.get();
+    }
+
+    long getSubmittedCount(Lane lane) {
+        return lanes.get(lane).submitted.get();
+    }
+
+    long getRejectedCount(Lane lane) {
+        return lanes.get(lane).rejected.get();
+    }
+
+    long getCompletedCount(Lane lane) {
+        return lanes.get(lane).getCompletedTaskCount();
+    }
+
+    /**
+     * Stops accepting new work. Tasks already queued, such as pending
+     * preference writes, still run before the lane threads exit.
+     */
+    void shutdown() {
+        for (LaneExecutor executor : lanes.values()) {
+            executor.shutdown();
+        }
+    }
+
+    boolean isShutdown() {
+        return lanes.get(Lane.LIFECYCLE).isShutdown();
+    }
+
+    private static class LaneExecutor extends ThreadPoolExecutor {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong maxQueueDepth = new AtomicLong();
+
+        LaneExecutor(final Lane lane, int queueCapacity) {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "PushNotificationPlugin-" + lane.name().toLowerCase());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.urbanairship.phonegap;
+
+import android.os.Bundle;
+
+/**
+ * Native handler for silent data pushes, the pushes without an alert. Set
+ * with PushNotificationPlugin.setDataPushHandler to act on data pushes, for
+ * example to start a sync, without waking the WebView.
+ */
+public interface DataPushHandler {
+
+    /**
+     * Called on the receiver's worker thread for each data push, before it is
+     * filtered or sent to JavaScript.
+     *
+     * @param pushID UA push ID, or null.
+     * @param extras All extras of the push intent.
+     * @return true if the push was handled and should not be sent to
+     * JavaScript.
+     */
+    boolean onDataPush(String pushID, Bundle extras);
+}
@@ -0,0 +1,372 @@
+package com.urbanairship.phonegap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cordova.CordovaWebView;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.urbanairship.Logger;
+
+/**
+ * Queues document events raised from native code and delivers them to the
+ * WebView in batches. Each flush hands up to maxBatchSize queued events to
+ * the EventTransport in a single call, which fires them in the order they
+ * were queued.
+ *
+ * While the page is not ready to receive events the dispatcher is held and
+ * events stay queued. A held queue is bounded by bufferSize; once it is full
+ * the overflow policy decides which event makes room for a new one. While
+ * not held the queue is unbounded, since flushes keep draining it.
+ */
+class EventDispatcher {
+
+    // Roughly one frame
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 16;
+    static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+    static final int DEFAULT_BUFFER_SIZE = 100;
+
+    enum OverflowPolicy {
+        // Drop the oldest queued event
+        DROP_OLDEST,
+        // Replace the newest queued event with the same name, or drop the
+        // oldest event if there is none
+        COLLAPSE;
+
+        /**
+         * @param name Value of the com.urbanairship.event_overflow option.
+         */
+        static OverflowPolicy parse(String name) {
+            if (name == null || "drop_oldest".equals(name)) {
+                return DROP_OLDEST;
+            }
+            if ("collapse".equals(name)) {
+                return COLLAPSE;
+            }
+
+            Logger.warn("Unknown event overflow policy " + name + ", using drop_oldest");
+            return DROP_OLDEST;
+        }
+    }
+
+    // Data pushes trade latency for fewer, larger batches
+    static final long DEFAULT_DATA_FLUSH_INTERVAL_MS = 100;
+    static final int DEFAULT_DATA_MAX_BATCH_SIZE = 100;
+
+    private volatile EventTransport transport;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Event> pending = new ArrayList<Event>();
+
+    private volatile long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    // Guarded by pending
+    private boolean flushScheduled = false;
+    private boolean held = false;
+    private int maxDepth = 0;
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private volatile int lastBatchSize = 0;
+
+    // Receive to dispatch latency of events raised from a broadcast
+    private final AtomicLong latencyCount = new AtomicLong();
+    private final AtomicLong latencyTotalNanos = new AtomicLong();
+    private final AtomicLong latencyMaxNanos = new AtomicLong();
+    private volatile long lastLatencyNanos = 0;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // Whether this dispatcher carries data pushes, kept on each event so
+    // held events can be journaled for the right lane
+    private final boolean dataLane;
+
+    EventDispatcher(CordovaWebView webView) {
+        this(webView, false);
+    }
+
+    EventDispatcher(CordovaWebView webView, boolean dataLane) {
+        this.transport = new EventTransport.LoadUrl(webView);
+        this.dataLane = dataLane;
+    }
+
+    void setTransport(EventTransport transport) {
+        this.transport = transport;
+    }
+
+    EventTransport getTransport() {
+        return transport;
+    }
+
+    void configure(int maxBatchSize, long flushIntervalMs) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flushIntervalMs = Math.max(0, flushIntervalMs);
+    }
+
+    void configureBuffer(int bufferSize, OverflowPolicy overflowPolicy) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Stops delivering events until release is called. Events keep queueing
+     * up to the buffer size, after which the overflow policy applies.
+     */
+    void hold() {
+        synchronized (pending) {
+            held = true;
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+        }
+    }
+
+    /**
+     * Resumes delivery and flushes the events queued while held.
+     */
+    void release() {
+        synchronized (pending) {
+            held = false;
+            if (!pending.isEmpty() && !flushScheduled) {
+                handler.post(flushRunnable);
+                flushScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns every queued event, oldest first.
+     */
+    List<Event> drain() {
+        synchronized (pending) {
+            List<Event> drained = new ArrayList<Event>(pending);
+            pending.clear();
+            return drained;
+        }
+    }
+
+    /**
+     * Queues an event. data must be a JSON value.
+     */
+    void dispatch(String event, String data) {
+        dispatch(event, data, null, 0);
+    }
+
+    /**
+     * Queues an event raised from a broadcast.
+     *
+     * @param pushID UA push ID of the push behind the event, kept so held
+     * events are still deduplicated once journaled, or null.
+     * @param receivedAt System.nanoTime() when the broadcast was received, or
+     * 0 if the event should not be counted in the delivery latency.
+     */
+    void dispatch(String event, String data, String pushID, long receivedAt) {
+        synchronized (pending) {
+            while (held && pending.size() >= bufferSize) {
+                makeRoom(event);
+            }
+            pending.add(new Event(event, data, pushID, receivedAt, dataLane));
+            eventCount.incrementAndGet();
+            maxDepth = Math.max(maxDepth, pending.size());
+
+            if (held) {
+                return;
+            }
+
+            if (pending.size() >= maxBatchSize) {
+                handler.removeCallbacks(flushRunnable);
+                handler.post(flushRunnable);
+                flushScheduled = true;
+            } else if (!flushScheduled) {
+                handler.postDelayed(flushRunnable, flushIntervalMs);
+                flushScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Delivers up to maxBatchSize queued events as a single JavaScript call.
+     * Anything left over is picked up by another flush posted right away.
+     */
+    void flush() {
+        List<Event> batch;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (held || pending.isEmpty()) {
+                return;
+            }
+
+            int count = Math.min(pending.size(), maxBatchSize);
+            List<Event> head = pending.subList(0, count);
+            batch = new ArrayList<Event>(head);
+            head.clear();
+
+            if (!pending.isEmpty()) {
+                handler.post(flushRunnable);
+                flushScheduled = true;
+            }
+        }
+
+        flushCount.incrementAndGet();
+        coalescedCount.addAndGet(batch.size() - 1);
+        lastBatchSize = batch.size();
+
+        if (batch.size() > 1 && LogLevels.isLoggable(Log.DEBUG)) {
+            Logger.debug("Delivering " + batch.size() + " events in one batch");
+        }
+
+        transport.deliver(batch);
+        recordLatency(batch, System.nanoTime());
+    }
+
+    // Called with pending locked, held and full
+    private void makeRoom(String event) {
+        if (overflowPolicy == OverflowPolicy.COLLAPSE) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (pending.get(i).name.equals(event)) {
+                    pending.remove(i);
+                    collapsedCount.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        pending.remove(0);
+        droppedCount.incrementAndGet();
+    }
+
+    private void recordLatency(List<Event> batch, long dispatchedAt) {
+        for (Event event : batch) {
+            if (event.receivedAt == 0) {
+                continue;
+            }
+
+            long latency = dispatchedAt - event.receivedAt;
+            lastLatencyNanos = latency;
+            latencyCount.incrementAndGet();
+            latencyTotalNanos.addAndGet(latency);
+
+            long max = latencyMaxNanos.get();
+            while (latency > max && !latencyMaxNanos.compareAndSet(max, latency)) {
+                max = latencyMaxNanos.get();
+            }
+        }
+    }
+
+    /**
+     * Writes the batch as a JSON array of [name, data] pairs. The event data
+     * is already JSON and is copied with only the characters that are unsafe
+     * in a javascript: URL escaped.
+     */
+    static void writeBatch(JsonWriter writer, List<Event> batch) {
+        writer.beginArray();
+        for (int i = 0; i < batch.size(); i++) {
+            Event event = batch.get(i);
+            writer.beginArray().value(event.name).rawValue(event.data).endArray();
+        }
+        writer.endArray();
+    }
+
+    long getEventCount() {
+        return eventCount.get();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Number of events that were delivered alongside another event instead of
+     * needing their own dispatch.
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    int getDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    int getMaxDepth() {
+        synchronized (pending) {
+            return maxDepth;
+        }
+    }
+
+    boolean isHeld() {
+        synchronized (pending) {
+            return held;
+        }
+    }
+
+    /**
+     * Number of events dropped because the buffer was full.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Number of events replaced by a newer event of the same name because the
+     * buffer was full.
+     */
+    long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    long getLatencyCount() {
+        return latencyCount.get();
+    }
+
+    long getLatencyTotalNanos() {
+        return latencyTotalNanos.get();
+    }
+
+    long getLatencyMaxNanos() {
+        return latencyMaxNanos.get();
+    }
+
+    long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    static class Event {
+        final String name;
+        final String data;
+        final String pushID;
+        final long receivedAt;
+        final boolean dataLane;
+
+        Event(String name, String data) {
+            this(name, data, null, 0, false);
+        }
+
+        Event(String name, String data, String pushID, long receivedAt, boolean dataLane) {
+            this.name = name;
+            this.data = data;
+            this.pushID = pushID;
+            this.receivedAt = receivedAt;
+            this.dataLane = dataLane;
+        }
+    }
+}
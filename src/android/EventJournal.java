@@ -0,0 +1,287 @@
+package com.urbanairship.phonegap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.urbanairship.Logger;
+
+/**
+ * Append-only on-device journal of events raised while no WebView is ready
+ * to receive them, for example a push delivered before takeOff on a cold
+ * start. Events are replayed in order once takeOff completes.
+ *
+ * Each append is a single buffered line write. The file is compacted when
+ * it holds twice the retained entry count, which keeps the amortized
+ * append cost constant under sustained bursts.
+ */
+class EventJournal {
+
+    static final String FILE_NAME = "com.urbanairship.phonegap.events";
+    static final int DEFAULT_MAX_ENTRIES = 100;
+    static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String NO_PUSH_ID = "-";
+    private static final String EVENT_LANE = "e";
+    private static final String DATA_LANE = "d";
+
+    private static EventJournal shared;
+
+    private final File file;
+    private final int maxEntries;
+    private final long maxAgeMs;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+    private final Set<String> pushIds = new HashSet<String>();
+    private Writer writer;
+    private int linesInFile = 0;
+    private boolean loaded = false;
+
+    /**
+     * The journal file is read on first use rather than here, so creating the
+     * journal during plugin initialization does no disk I/O.
+     */
+    EventJournal(File file, int maxEntries, long maxAgeMs) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Creates the shared journal in the application's files directory if it
+     * does not exist yet.
+     */
+    static synchronized EventJournal init(Context context) {
+        if (shared == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            shared = new EventJournal(file, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MS);
+        }
+        return shared;
+    }
+
+    static synchronized EventJournal shared() {
+        return shared;
+    }
+
+    /**
+     * Appends an event. Events carrying a push ID that is already journaled
+     * are ignored.
+     *
+     * @return false if the event was a duplicate.
+     *
+     * @param dataLane Whether the event is replayed on the data push lane.
+     */
+    synchronized boolean append(String event, String data, String pushId, boolean dataLane) {
+        load();
+
+        if (pushId != null && !pushIds.add(pushId)) {
+            if (LogLevels.isLoggable(Log.INFO)) {
+                Logger.info("Ignoring duplicate pending event for push " + pushId);
+            }
+            return false;
+        }
+
+        Entry entry = new Entry(System.currentTimeMillis(), pushId, event, data, dataLane);
+        entries.addLast(entry);
+        while (entries.size() > maxEntries) {
+            forget(entries.removeFirst());
+        }
+
+        if (linesInFile >= maxEntries * 2) {
+            compact();
+        } else {
+            try {
+                if (writer == null) {
+                    writer = openWriter(true);
+                }
+                writer.write(entry.toLine());
+                writer.flush();
+                linesInFile++;
+            } catch (IOException e) {
+                Logger.error("Unable to append to pending event journal", e);
+                closeWriter();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes and returns every pending event that has not expired, oldest
+     * first, and truncates the journal file.
+     */
+    synchronized List<Entry> drain() {
+        load();
+
+        evictExpired(System.currentTimeMillis());
+
+        List<Entry> drained = new ArrayList<Entry>(entries);
+        entries.clear();
+        pushIds.clear();
+
+        closeWriter();
+        if (file.exists() && !file.delete()) {
+            Logger.warn("Unable to delete pending event journal " + file);
+        }
+        linesInFile = 0;
+
+        return drained;
+    }
+
+    synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.fromLine(line);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.pushId != null && !pushIds.add(entry.pushId)) {
+                    continue;
+                }
+                entries.addLast(entry);
+                linesInFile++;
+            }
+        } catch (IOException e) {
+            Logger.error("Unable to read pending event journal", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        evictExpired(System.currentTimeMillis());
+        while (entries.size() > maxEntries) {
+            forget(entries.removeFirst());
+        }
+    }
+
+    // Rewrites the file with only the retained entries
+    private void compact() {
+        evictExpired(System.currentTimeMillis());
+        closeWriter();
+
+        try {
+            writer = openWriter(false);
+            for (Entry entry : entries) {
+                writer.write(entry.toLine());
+            }
+            writer.flush();
+            linesInFile = entries.size();
+        } catch (IOException e) {
+            Logger.error("Unable to compact pending event journal", e);
+            closeWriter();
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.timestamp <= maxAgeMs) {
+                // Entries are in append order, the rest are newer
+                break;
+            }
+            iterator.remove();
+            forget(entry);
+        }
+    }
+
+    private void forget(Entry entry) {
+        if (entry.pushId != null) {
+            pushIds.remove(entry.pushId);
+        }
+    }
+
+    private Writer openWriter(boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            writer = null;
+        }
+    }
+
+    static class Entry {
+        final long timestamp;
+        final String pushId;
+        final String event;
+        final String data;
+        final boolean dataLane;
+
+        Entry(long timestamp, String pushId, String event, String data, boolean dataLane) {
+            this.timestamp = timestamp;
+            this.pushId = pushId;
+            this.event = event;
+            this.data = data;
+            this.dataLane = dataLane;
+        }
+
+        // Event data is serialized JSON, so it never contains a raw newline or tab
+        String toLine() {
+            return timestamp + "\t" + (pushId != null ? pushId : NO_PUSH_ID) + "\t" + (dataLane ? DATA_LANE : EVENT_LANE)
+                    + "\t" + event + "\t" + data + "\n";
+        }
+
+        static Entry fromLine(String line) {
+            String[] parts = line.split("\t", 5);
+            if (parts.length < 4) {
+                return null;
+            }
+
+            try {
+                long timestamp = Long.parseLong(parts[0]);
+                String pushId = NO_PUSH_ID.equals(parts[1]) ? null : parts[1];
+
+                // Lines written before the lane was journaled have no lane field
+                if (parts.length == 4) {
+                    return new Entry(timestamp, pushId, parts[2], parts[3], false);
+                }
+                return new Entry(timestamp, pushId, parts[3], parts[4], DATA_LANE.equals(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.urbanairship.phonegap;
+
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Delivers a batch of events from EventDispatcher to JavaScript, where each
+ * event is fired as a document event. Called on the main thread.
+ */
+interface EventTransport {
+
+    // Values of the com.urbanairship.event_transport option
+    String LOAD_URL = "loadUrl";
+    String CALLBACK = "callback";
+
+    void deliver(List<EventDispatcher.Event> batch);
+
+    /**
+     * Fires the batch by loading a javascript: URL in the WebView.
+     */
+    class LoadUrl implements EventTransport {
+        private static final String SCRIPT_START = "javascript:(function(events){for(var i=0;i<events.length;i++){"
+                + "try{cordova.fireDocumentEvent(events[i][0], events[i][1]);}"
+                + "catch(e){console.log('exception firing event '+events[i][0]+' from native');}}})(";
+
+        private final CordovaWebView webView;
+        private final JsonWriter writer = new JsonWriter(1024);
+
+        LoadUrl(CordovaWebView webView) {
+            this.webView = webView;
+        }
+
+        @Override
+        public void deliver(List<EventDispatcher.Event> batch) {
+            webView.loadUrl(buildScript(batch));
+        }
+
+        String buildScript(List<EventDispatcher.Event> batch) {
+            writer.reset().raw(SCRIPT_START);
+            EventDispatcher.writeBatch(writer, batch);
+            writer.raw(");");
+
+            String script = writer.toString();
+            writer.trim();
+            return script;
+        }
+    }
+
+    /**
+     * Sends the batch as a JSON string through the callback registered by the
+     * onEvent action. The JavaScript side parses it and fires the events, so
+     * nothing is evaluated as script. Falls back to another transport until a
+     * callback is registered.
+     */
+    class Callback implements EventTransport {
+        private final EventTransport fallback;
+        private final JsonWriter writer = new JsonWriter(1024);
+        private volatile CallbackContext callbackContext;
+
+        Callback(EventTransport fallback) {
+            this.fallback = fallback;
+        }
+
+        void setCallbackContext(CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+        }
+
+        boolean hasCallbackContext() {
+            return callbackContext != null;
+        }
+
+        @Override
+        public void deliver(List<EventDispatcher.Event> batch) {
+            CallbackContext callbackContext = this.callbackContext;
+            if (callbackContext == null) {
+                fallback.deliver(batch);
+                return;
+            }
+
+            EventDispatcher.writeBatch(writer.reset(), batch);
+            String json = writer.toString();
+            writer.trim();
+
+            PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+        }
+    }
+}
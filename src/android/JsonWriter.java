@@ -0,0 +1,269 @@
+package com.urbanairship.phonegap;
+
+/**
+ * Streaming JSON writer for plugin events. Writes into a char buffer that is
+ * kept between documents, so encoding an event allocates only the resulting
+ * String.
+ *
+ * Output is safe to inline in a javascript: URL as well as to parse as JSON.
+ * On top of the escaping org.json's JSONStringer does, U+2028 and U+2029 are
+ * escaped because they end a line in JavaScript source, and '%' is escaped
+ * because some WebViews URL-decode javascript: URLs before running them.
+ *
+ * Not thread safe. Callers keep one writer per thread.
+ */
+final class JsonWriter {
+
+    // Buffers above this size are dropped by trim instead of being kept
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final int MAX_DEPTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final int initialCapacity;
+    private char[] buffer;
+    private int length;
+
+    // Whether the container at each depth already holds an element
+    private final boolean[] hasElements = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    JsonWriter(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.buffer = new char[initialCapacity];
+    }
+
+    /**
+     * Clears the writer for a new document, keeping the buffer.
+     */
+    JsonWriter reset() {
+        length = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    /**
+     * Replaces the buffer with a new one of the initial capacity if a large
+     * document grew it past MAX_RETAINED_CAPACITY.
+     */
+    void trim() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new char[initialCapacity];
+        }
+    }
+
+    JsonWriter beginObject() {
+        return open('{');
+    }
+
+    JsonWriter endObject() {
+        return close('}');
+    }
+
+    JsonWriter beginArray() {
+        return open('[');
+    }
+
+    JsonWriter endArray() {
+        return close(']');
+    }
+
+    JsonWriter name(String name) {
+        beforeValue();
+        string(name);
+        append(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or null.
+     */
+    JsonWriter value(String value) {
+        beforeValue();
+        if (value == null) {
+            append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        beforeValue();
+        append(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        beforeValue();
+        append(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes an already encoded JSON value, escaping the characters that are
+     * unsafe in a javascript: URL. Those can only occur inside strings, so
+     * the value stays valid JSON.
+     */
+    JsonWriter rawValue(String json) {
+        beforeValue();
+        int length = json.length();
+        int safe = 0;
+        while (safe < length && !isScriptUnsafe(json.charAt(safe))) {
+            safe++;
+        }
+
+        append(json, 0, safe);
+        for (int i = safe; i < length; i++) {
+            char c = json.charAt(i);
+            if (isScriptUnsafe(c)) {
+                unicodeEscape(c);
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends text outside of the JSON structure, such as script around it,
+     * without escaping.
+     */
+    JsonWriter raw(String text) {
+        append(text, 0, text.length());
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private JsonWriter open(char bracket) {
+        beforeValue();
+        append(bracket);
+        depth++;
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        hasElements[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        depth--;
+        append(bracket);
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+
+        if (depth > 0) {
+            if (hasElements[depth]) {
+                append(',');
+            }
+            hasElements[depth] = true;
+        }
+    }
+
+    private void string(String value) {
+        append('"');
+
+        // Most extras need no escaping and are copied in one go
+        int length = value.length();
+        int safe = 0;
+        while (safe < length && !needsEscape(value.charAt(safe))) {
+            safe++;
+        }
+        append(value, 0, safe);
+
+        for (int i = safe; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                append('\\');
+                append(c);
+                break;
+            case '\t':
+                append("\\t");
+                break;
+            case '\b':
+                append("\\b");
+                break;
+            case '\n':
+                append("\\n");
+                break;
+            case '\r':
+                append("\\r");
+                break;
+            case '\f':
+                append("\\f");
+                break;
+            default:
+                if (needsEscape(c)) {
+                    unicodeEscape(c);
+                } else {
+                    append(c);
+                }
+                break;
+            }
+        }
+
+        append('"');
+    }
+
+    private static boolean needsEscape(char c) {
+        return c < 0x20 || c == '"' || c == '\\' || c == '/' || isScriptUnsafe(c);
+    }
+
+    private static boolean isScriptUnsafe(char c) {
+        return c == '%' || c == '\u2028' || c == '\u2029';
+    }
+
+    private void unicodeEscape(char c) {
+        ensureCapacity(6);
+        buffer[length++] = '\\';
+        buffer[length++] = 'u';
+        buffer[length++] = HEX[(c >> 12) & 0xf];
+        buffer[length++] = HEX[(c >> 8) & 0xf];
+        buffer[length++] = HEX[(c >> 4) & 0xf];
+        buffer[length++] = HEX[c & 0xf];
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = c;
+    }
+
+    private void append(String text) {
+        append(text, 0, text.length());
+    }
+
+    private void append(String text, int start, int end) {
+        int count = end - start;
+        ensureCapacity(count);
+        text.getChars(start, end, buffer, length);
+        length += count;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            char[] grown = new char[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.urbanairship.phonegap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cordova.CallbackContext;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.urbanairship.Logger;
+import com.urbanairship.location.UALocationManager;
+import com.urbanairship.util.ServiceNotBoundException;
+
+/**
+ * Throttles recordCurrentLocation requests. At most one location is recorded
+ * per minimum interval; requests made inside the interval are merged into a
+ * single record at the end of it. A record is skipped if the device has not
+ * moved at least the minimum distance since the last recorded location.
+ *
+ * The location service is bound once and left bound. If it is not bound yet
+ * when a record is due, the record is retried once the bind has had time to
+ * complete instead of being dropped.
+ *
+ * Records run on the lifecycle lane, like the other location calls.
+ */
+class LocationScheduler {
+
+    // Result passed to the recordCurrentLocation callback
+    static final String RECORDED = "recorded";
+    static final String COALESCED = "coalesced";
+    static final String SUPPRESSED = "suppressed";
+
+    static final long BIND_RETRY_DELAY_MS = 500;
+    static final int MAX_BIND_RETRIES = 10;
+
+    private final ActionScheduler scheduler;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private volatile long minIntervalMs = 0;
+    private volatile float minDistanceMeters = 0;
+
+    // Guarded by this
+    private boolean recordScheduled = false;
+    private int bindRetries = 0;
+    private long lastRecordedAt = -1;
+    private Location lastRecordedLocation;
+    private List<CallbackContext> callbacks = new ArrayList<CallbackContext>();
+
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong bindCount = new AtomicLong();
+
+    private final Runnable recordRunnable = new Runnable() {
+        @Override
+        public void run() {
+            record();
+        }
+    };
+
+    private final Runnable submitRecordRunnable = new Runnable() {
+        @Override
+        public void run() {
+            submitRecord();
+        }
+    };
+
+    LocationScheduler(ActionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param minIntervalMs Minimum time between recorded locations, 0 to
+     * record on every request.
+     * @param minDistanceMeters Minimum distance from the last recorded
+     * location, 0 to record regardless of movement.
+     */
+    void configure(long minIntervalMs, float minDistanceMeters) {
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.minDistanceMeters = Math.max(0, minDistanceMeters);
+    }
+
+    /**
+     * Requests a location record. The callback is called with RECORDED,
+     * COALESCED or SUPPRESSED once the merged request has run.
+     */
+    synchronized void request(CallbackContext callbackContext) {
+        requestedCount.incrementAndGet();
+        callbacks.add(callbackContext);
+
+        if (recordScheduled) {
+            coalescedCount.incrementAndGet();
+            return;
+        }
+        recordScheduled = true;
+
+        long wait = lastRecordedAt < 0 ? 0 : lastRecordedAt + minIntervalMs - SystemClock.elapsedRealtime();
+        if (wait > 0) {
+            handler.postDelayed(submitRecordRunnable, wait);
+        } else {
+            submitRecord();
+        }
+    }
+
+    long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * Number of requests merged into another request's record.
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Number of records skipped because the device had not moved far enough.
+     */
+    long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    long getBindCount() {
+        return bindCount.get();
+    }
+
+    private void submitRecord() {
+        if (!scheduler.submit(ActionScheduler.Lane.LIFECYCLE, recordRunnable)) {
+            finish("Unable to record location, plugin is busy or shut down", false);
+        }
+    }
+
+    private void record() {
+        UALocationManager locationManager = UALocationManager.shared();
+
+        if (!UALocationManager.isServiceBound()) {
+            retryAfterBind();
+            return;
+        }
+
+        try {
+            Location location = locationManager.getLocation();
+            Location previous;
+            synchronized (this) {
+                previous = lastRecordedLocation;
+                bindRetries = 0;
+            }
+
+            if (location != null && previous != null && minDistanceMeters > 0
+                    && location.distanceTo(previous) < minDistanceMeters) {
+                suppressedCount.incrementAndGet();
+                finish(SUPPRESSED, true);
+                return;
+            }
+
+            Logger.debug("Recording current location");
+            locationManager.recordCurrentLocation();
+            recordedCount.incrementAndGet();
+
+            synchronized (this) {
+                lastRecordedAt = SystemClock.elapsedRealtime();
+                if (location != null) {
+                    lastRecordedLocation = location;
+                }
+            }
+            finish(RECORDED, true);
+        } catch (ServiceNotBoundException e) {
+            retryAfterBind();
+        } catch (RemoteException e) {
+            Logger.error("Caught RemoteException in recordCurrentLocation", e);
+            finish("Unable to record location", false);
+        }
+    }
+
+    private void retryAfterBind() {
+        synchronized (this) {
+            if (bindRetries == 0) {
+                Logger.info("Location not bound, binding now");
+                UALocationManager.bindService();
+                bindCount.incrementAndGet();
+            }
+
+            if (bindRetries < MAX_BIND_RETRIES) {
+                bindRetries++;
+                handler.postDelayed(submitRecordRunnable, BIND_RETRY_DELAY_MS);
+                return;
+            }
+
+            // Give up on this request, the next one binds again
+            bindRetries = 0;
+        }
+
+        Logger.warn("Location service did not bind, dropping location record");
+        finish("Location service is not bound", false);
+    }
+
+    private void finish(String message, boolean success) {
+        List<CallbackContext> pending;
+        synchronized (this) {
+            pending = callbacks;
+            callbacks = new ArrayList<CallbackContext>();
+            recordScheduled = false;
+        }
+
+        // Merged requests learn that their request was coalesced
+        for (int i = 0; i < pending.size(); i++) {
+            CallbackContext callbackContext = pending.get(i);
+            if (!success) {
+                callbackContext.error(message);
+            } else if (i == 0) {
+                callbackContext.success(message);
+            } else {
+                callbackContext.success(COALESCED);
+            }
+        }
+    }
+}
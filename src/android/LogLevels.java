@@ -0,0 +1,84 @@
+package com.urbanairship.phonegap;
+
+import java.util.Locale;
+
+import android.util.Log;
+
+import com.urbanairship.Logger;
+
+/**
+ * Maps the log level names accepted from config and JavaScript to
+ * android.util.Log priorities, and lets hot paths check the current level
+ * before building a log message.
+ */
+final class LogLevels {
+
+    // Higher than any Log priority, disables logging entirely
+    static final int NONE = Log.ASSERT + 1;
+
+    private LogLevels() {
+    }
+
+    /**
+     * @return true if a message at the given priority would be logged.
+     */
+    static boolean isLoggable(int level) {
+        return Logger.logLevel <= level;
+    }
+
+    /**
+     * Parses a level name (verbose, debug, info, warn, error or none) or a
+     * numeric android.util.Log priority.
+     *
+     * @return The priority, or defaultValue if the value is null or unknown.
+     */
+    static int parse(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        String name = value.trim().toLowerCase(Locale.US);
+        if (name.equals("verbose")) {
+            return Log.VERBOSE;
+        } else if (name.equals("debug")) {
+            return Log.DEBUG;
+        } else if (name.equals("info")) {
+            return Log.INFO;
+        } else if (name.equals("warn")) {
+            return Log.WARN;
+        } else if (name.equals("error")) {
+            return Log.ERROR;
+        } else if (name.equals("none")) {
+            return NONE;
+        }
+
+        try {
+            int level = Integer.parseInt(name);
+            if (level >= Log.VERBOSE && level <= NONE) {
+                return level;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+
+        Logger.warn("Unknown log level: " + value);
+        return defaultValue;
+    }
+
+    static String name(int level) {
+        switch (level) {
+            case Log.VERBOSE:
+                return "verbose";
+            case Log.DEBUG:
+                return "debug";
+            case Log.INFO:
+                return "info";
+            case Log.WARN:
+                return "warn";
+            case Log.ERROR:
+                return "error";
+            default:
+                return level >= NONE ? "none" : String.valueOf(level);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.urbanairship.phonegap;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded FIFO of notifications the user opened, written from the
+ * broadcast receiver and drained by the getIncoming actions. When the inbox
+ * is full the oldest notification is dropped and counted as an overflow.
+ *
+ * Based on a sequence-numbered ring buffer, so producers and consumers only
+ * contend on a single compare-and-set each. pollLatest takes the newest
+ * notification out of order by swapping it for a TAKEN marker, which poll
+ * skips when it reaches that slot.
+ */
+class NotificationInbox {
+
+    private final int mask;
+    private final AtomicReferenceArray<Notification> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    // Left in a slot whose notification pollLatest already returned
+    private static final Notification TAKEN = new Notification(null, null);
+
+    /**
+     * @param capacity Maximum number of notifications held, rounded up to a
+     * power of two.
+     */
+    NotificationInbox(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        buffer = new AtomicReferenceArray<Notification>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    void offer(String alert, Map<String, String> extras) {
+        Notification notification = new Notification(alert, extras);
+        while (!tryOffer(notification)) {
+            if (poll() != null) {
+                overflowCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The oldest notification, or null if the inbox is empty.
+     */
+    Notification poll() {
+        long position = head.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Notification notification = buffer.getAndSet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    if (notification != TAKEN) {
+                        return notification;
+                    }
+                    // Already returned by pollLatest, move on to the next one
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+
+            position = head.get();
+        }
+    }
+
+    /**
+     * Takes the newest notification that has not been returned yet, leaving
+     * older ones for poll. A notification still being written by a producer
+     * is not visible yet.
+     *
+     * @return The newest notification, or null if the inbox is empty.
+     */
+    Notification pollLatest() {
+        long first = head.get();
+        for (long position = tail.get() - 1; position >= first; position--) {
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence > position + 1) {
+                // Consumed by poll, and so is everything older
+                return null;
+            }
+            if (sequence != position + 1) {
+                // Claimed but not yet written
+                continue;
+            }
+
+            Notification notification = buffer.get(index);
+            if (notification != null && notification != TAKEN && buffer.compareAndSet(index, notification, TAKEN)) {
+                return notification;
+            }
+        }
+        return null;
+    }
+
+    long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    private boolean tryOffer(Notification notification) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, notification);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+
+            position = tail.get();
+        }
+    }
+
+    static class Notification {
+        final String alert;
+        final Map<String, String> extras;
+
+        Notification(String alert, Map<String, String> extras) {
+            this.alert = alert;
+            this.extras = extras;
+        }
+    }
+}
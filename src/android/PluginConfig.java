@@ -0,0 +1,222 @@
+package com.urbanairship.phonegap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Bundle;
+
+import com.urbanairship.AirshipConfigOptions;
+import com.urbanairship.Logger;
+
+/**
+ * Immutable snapshot of the plugin configuration, read once from the launch
+ * intent extras in takeOff. Actions read it with a single field access
+ * instead of going back to the intent or to UAirship.
+ *
+ * The tuning options can be changed at runtime with withOverrides. The app
+ * keys and production flag are handed to UAirship.takeOff, which only runs
+ * once per process, so changing them needs an app restart.
+ */
+final class PluginConfig {
+
+    static final String PRODUCTION_KEY = "com.urbanairship.production_app_key";
+    static final String PRODUCTION_SECRET = "com.urbanairship.production_app_secret";
+    static final String DEVELOPMENT_KEY = "com.urbanairship.development_app_key";
+    static final String DEVELOPMENT_SECRET = "com.urbanairship.development_app_secret";
+    static final String IN_PRODUCTION = "com.urbanairship.in_production";
+    static final String GCM_SENDER = "com.urbanairship.gcm_sender";
+    static final String EVENT_BATCH_SIZE = "com.urbanairship.event_batch_size";
+    static final String EVENT_FLUSH_INTERVAL = "com.urbanairship.event_flush_interval";
+    static final String SETTINGS_DEBOUNCE = "com.urbanairship.settings_debounce";
+    static final String LOG_LEVEL = "com.urbanairship.log_level";
+    static final String EVENT_TRANSPORT = "com.urbanairship.event_transport";
+    static final String LOCATION_MIN_INTERVAL = "com.urbanairship.location_min_interval";
+    static final String LOCATION_MIN_DISTANCE = "com.urbanairship.location_min_distance";
+    static final String DATA_BATCH_SIZE = "com.urbanairship.data_batch_size";
+    static final String DATA_FLUSH_INTERVAL = "com.urbanairship.data_flush_interval";
+    static final String EVENT_BUFFER_SIZE = "com.urbanairship.event_buffer_size";
+    static final String EVENT_OVERFLOW = "com.urbanairship.event_overflow";
+    static final String DUPLICATE_WINDOW = "com.urbanairship.duplicate_window";
+    static final String DUPLICATE_MAX_AGE = "com.urbanairship.duplicate_max_age";
+
+    // @formatter:off
+    private static final List<String> TAKEOFF_KEYS = Arrays.asList(
+        PRODUCTION_KEY, PRODUCTION_SECRET, DEVELOPMENT_KEY, DEVELOPMENT_SECRET,
+        IN_PRODUCTION, GCM_SENDER
+    );
+
+    private static final List<String> TUNING_KEYS = Arrays.asList(
+        EVENT_BATCH_SIZE, EVENT_FLUSH_INTERVAL, SETTINGS_DEBOUNCE, LOG_LEVEL,
+        EVENT_TRANSPORT, LOCATION_MIN_INTERVAL, LOCATION_MIN_DISTANCE, DATA_BATCH_SIZE,
+        DATA_FLUSH_INTERVAL, EVENT_BUFFER_SIZE, EVENT_OVERFLOW, DUPLICATE_WINDOW, DUPLICATE_MAX_AGE
+    );
+    // @formatter:on
+
+    // Option key -> raw value, for building overridden copies
+    private final Map<String, String> values;
+
+    final String productionAppKey;
+    final String productionAppSecret;
+    final String developmentAppKey;
+    final String developmentAppSecret;
+    final String gcmSender;
+    final boolean inProduction;
+
+    // -1 if not configured
+    final int logLevel;
+    final int eventBatchSize;
+    final int eventFlushIntervalMs;
+    final int settingsDebounceMs;
+    final String eventTransport;
+    final int locationMinIntervalMs;
+    final int locationMinDistanceMeters;
+    final int dataBatchSize;
+    final int dataFlushIntervalMs;
+    final int eventBufferSize;
+    final EventDispatcher.OverflowPolicy eventOverflowPolicy;
+    final int duplicateWindow;
+    final int duplicateMaxAgeMs;
+
+    // Capabilities from the Airship config, known once UAirship has taken off
+    final boolean pushServiceEnabled;
+    final boolean locationServiceEnabled;
+
+    private PluginConfig(Map<String, String> values, boolean pushServiceEnabled, boolean locationServiceEnabled) {
+        this.values = Collections.unmodifiableMap(values);
+        this.productionAppKey = values.get(PRODUCTION_KEY);
+        this.productionAppSecret = values.get(PRODUCTION_SECRET);
+        this.developmentAppKey = values.get(DEVELOPMENT_KEY);
+        this.developmentAppSecret = values.get(DEVELOPMENT_SECRET);
+        this.gcmSender = values.get(GCM_SENDER);
+        this.inProduction = "true".equals(values.get(IN_PRODUCTION));
+        this.logLevel = LogLevels.parse(values.get(LOG_LEVEL), -1);
+        this.eventBatchSize = getInt(values, EVENT_BATCH_SIZE, EventDispatcher.DEFAULT_MAX_BATCH_SIZE);
+        this.eventFlushIntervalMs = getInt(values, EVENT_FLUSH_INTERVAL, (int) EventDispatcher.DEFAULT_FLUSH_INTERVAL_MS);
+        this.settingsDebounceMs = getInt(values, SETTINGS_DEBOUNCE, 0);
+        this.eventTransport = values.containsKey(EVENT_TRANSPORT) ? values.get(EVENT_TRANSPORT) : EventTransport.LOAD_URL;
+        this.locationMinIntervalMs = getInt(values, LOCATION_MIN_INTERVAL, 0);
+        this.locationMinDistanceMeters = getInt(values, LOCATION_MIN_DISTANCE, 0);
+        this.dataBatchSize = getInt(values, DATA_BATCH_SIZE, EventDispatcher.DEFAULT_DATA_MAX_BATCH_SIZE);
+        this.dataFlushIntervalMs = getInt(values, DATA_FLUSH_INTERVAL, (int) EventDispatcher.DEFAULT_DATA_FLUSH_INTERVAL_MS);
+        this.eventBufferSize = getInt(values, EVENT_BUFFER_SIZE, EventDispatcher.DEFAULT_BUFFER_SIZE);
+        this.eventOverflowPolicy = EventDispatcher.OverflowPolicy.parse(values.get(EVENT_OVERFLOW));
+        this.duplicateWindow = getInt(values, DUPLICATE_WINDOW, RecentPushIds.DEFAULT_MAX_ENTRIES);
+        this.duplicateMaxAgeMs = getInt(values, DUPLICATE_MAX_AGE, (int) RecentPushIds.DEFAULT_MAX_AGE_MS);
+        this.pushServiceEnabled = pushServiceEnabled;
+        this.locationServiceEnabled = locationServiceEnabled;
+    }
+
+    /**
+     * Reads the options from the launch intent extras. Services are reported
+     * as disabled until withServices is called.
+     */
+    static PluginConfig fromBundle(Bundle extras) {
+        Map<String, String> values = new HashMap<String, String>();
+        if (extras != null) {
+            for (String key : TAKEOFF_KEYS) {
+                putIfSet(values, key, extras.getString(key));
+            }
+            for (String key : TUNING_KEYS) {
+                putIfSet(values, key, extras.getString(key));
+            }
+        }
+        return new PluginConfig(values, false, false);
+    }
+
+    /**
+     * @return A copy with the push and location service flags from the
+     * Airship config options UAirship took off with.
+     */
+    PluginConfig withServices(AirshipConfigOptions options) {
+        return new PluginConfig(new HashMap<String, String>(values), options.pushServiceEnabled,
+                options.locationOptions.locationServiceEnabled);
+    }
+
+    /**
+     * @param overrides Option keys and their new values. A null or empty
+     * value resets the option to its default.
+     * @return A copy with the overridden tuning options.
+     * @throws IllegalArgumentException if an option is unknown or can only be
+     * set before takeOff.
+     */
+    PluginConfig withOverrides(JSONObject overrides) throws JSONException {
+        Map<String, String> updated = new HashMap<String, String>(values);
+
+        Iterator<?> keys = overrides.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            if (TAKEOFF_KEYS.contains(key)) {
+                throw new IllegalArgumentException(key + " can only be changed by restarting the app");
+            }
+            if (!TUNING_KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown option " + key);
+            }
+
+            updated.remove(key);
+            if (!overrides.isNull(key)) {
+                putIfSet(updated, key, overrides.getString(key));
+            }
+        }
+
+        return new PluginConfig(updated, pushServiceEnabled, locationServiceEnabled);
+    }
+
+    void applyTo(AirshipConfigOptions options) {
+        options.productionAppKey = productionAppKey;
+        options.productionAppSecret = productionAppSecret;
+        options.developmentAppKey = developmentAppKey;
+        options.developmentAppSecret = developmentAppSecret;
+        options.gcmSender = gcmSender;
+        options.inProduction = inProduction;
+
+        // Without a configured level the airshipconfig.properties levels apply
+        if (logLevel >= 0) {
+            options.developmentLogLevel = logLevel;
+            options.productionLogLevel = logLevel;
+        }
+    }
+
+    /**
+     * @return The tuning options and capabilities. Keys and secrets are left
+     * out.
+     */
+    JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("inProduction", inProduction);
+        json.put("pushServiceEnabled", pushServiceEnabled);
+        json.put("locationServiceEnabled", locationServiceEnabled);
+        for (String key : TUNING_KEYS) {
+            if (values.containsKey(key)) {
+                json.put(key, values.get(key));
+            }
+        }
+        return json;
+    }
+
+    private static void putIfSet(Map<String, String> values, String key, String value) {
+        if (value != null && value.trim().length() > 0) {
+            values.put(key, value.trim());
+        }
+    }
+
+    private static int getInt(Map<String, String> values, String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Logger.warn("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+}
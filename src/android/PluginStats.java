@@ -0,0 +1,303 @@
+package com.urbanairship.phonegap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lock-free counters and latency histograms for bridge calls, events and
+ * broadcasts. Recording is a few atomic increments, so it stays on in
+ * production.
+ *
+ * reset() starts a new measurement window by dropping the current counters.
+ * A record racing with a reset may land in the old window and be lost.
+ */
+class PluginStats {
+
+    // Push classes
+    static final String ALERT_PUSH = "alert";
+    static final String DATA_PUSH = "data";
+
+    enum PushOutcome {
+        // Sent to JavaScript
+        RAISED,
+        // Matched no subscription
+        FILTERED,
+        // Consumed by the native DataPushHandler
+        HANDLED
+    }
+
+    private final ConcurrentMap<String, CallStats> actions = new ConcurrentHashMap<String, CallStats>();
+    private final ConcurrentMap<String, CallStats> broadcasts = new ConcurrentHashMap<String, CallStats>();
+    private final ConcurrentMap<String, EventStats> events = new ConcurrentHashMap<String, EventStats>();
+    private final ConcurrentMap<String, PushStats> pushes = new ConcurrentHashMap<String, PushStats>();
+
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * Records an action that ran.
+     *
+     * @param queuedNanos Time between execute and the action starting on its lane.
+     * @param runNanos Time the action took to run.
+     * @param failed Whether the action threw.
+     */
+    void recordAction(String action, long queuedNanos, long runNanos, boolean failed) {
+        CallStats stats = callStats(actions, action);
+        stats.calls.incrementAndGet();
+        stats.queueWait.record(queuedNanos);
+        stats.execution.record(runNanos);
+        if (failed) {
+            stats.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records an action that could not be queued on its lane.
+     */
+    void recordRejectedAction(String action) {
+        CallStats stats = callStats(actions, action);
+        stats.calls.incrementAndGet();
+        stats.rejected.incrementAndGet();
+    }
+
+    void recordBroadcast(String intentAction, long queuedNanos, long runNanos, boolean failed) {
+        CallStats stats = callStats(broadcasts, intentAction != null ? intentAction : "unknown");
+        stats.calls.incrementAndGet();
+        stats.queueWait.record(queuedNanos);
+        stats.execution.record(runNanos);
+        if (failed) {
+            stats.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param journaled Whether the event was journaled rather than sent
+     * because the plugin was not ready.
+     */
+    void recordEvent(String event, boolean journaled) {
+        EventStats stats = events.get(event);
+        if (stats == null) {
+            EventStats created = new EventStats();
+            stats = events.putIfAbsent(event, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        if (journaled) {
+            stats.journaled.incrementAndGet();
+        } else {
+            stats.sent.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a push that was not dropped as a duplicate.
+     *
+     * @param pushClass ALERT_PUSH or DATA_PUSH.
+     * @param handlingNanos Time from the broadcast being received until the
+     * push was raised, filtered or handled.
+     */
+    void recordPush(String pushClass, PushOutcome outcome, long handlingNanos) {
+        PushStats stats = pushes.get(pushClass);
+        if (stats == null) {
+            PushStats created = new PushStats();
+            stats = pushes.putIfAbsent(pushClass, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        stats.received.incrementAndGet();
+        switch (outcome) {
+        case RAISED:
+            stats.raised.incrementAndGet();
+            break;
+        case FILTERED:
+            stats.filtered.incrementAndGet();
+            break;
+        case HANDLED:
+            stats.handled.incrementAndGet();
+            break;
+        }
+        stats.handling.record(handlingNanos);
+    }
+
+    void reset() {
+        windowStart = System.nanoTime();
+        actions.clear();
+        broadcasts.clear();
+        events.clear();
+        pushes.clear();
+    }
+
+    /**
+     * @return The counters recorded since the last reset.
+     */
+    JSONObject toJSON() throws JSONException {
+        double windowSeconds = Math.max(1, System.nanoTime() - windowStart) / 1e9;
+
+        JSONObject eventsObject = new JSONObject();
+        for (Map.Entry<String, EventStats> entry : events.entrySet()) {
+            EventStats stats = entry.getValue();
+            long sent = stats.sent.get();
+
+            JSONObject eventObject = new JSONObject();
+            eventObject.put("sent", sent);
+            eventObject.put("journaled", stats.journaled.get());
+            eventObject.put("perSecond", sent / windowSeconds);
+            eventsObject.put(entry.getKey(), eventObject);
+        }
+
+        JSONObject pushesObject = new JSONObject();
+        for (Map.Entry<String, PushStats> entry : pushes.entrySet()) {
+            PushStats stats = entry.getValue();
+            long received = stats.received.get();
+
+            JSONObject pushObject = new JSONObject();
+            pushObject.put("received", received);
+            pushObject.put("raised", stats.raised.get());
+            pushObject.put("filtered", stats.filtered.get());
+            pushObject.put("handled", stats.handled.get());
+            pushObject.put("perSecond", received / windowSeconds);
+            pushObject.put("handling", stats.handling.toJSON());
+            pushesObject.put(entry.getKey(), pushObject);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("windowSeconds", windowSeconds);
+        json.put("actions", callsObject(actions));
+        json.put("broadcasts", callsObject(broadcasts));
+        json.put("events", eventsObject);
+        json.put("pushes", pushesObject);
+        return json;
+    }
+
+    private static JSONObject callsObject(Map<String, CallStats> calls) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, CallStats> entry : calls.entrySet()) {
+            CallStats stats = entry.getValue();
+
+            JSONObject callObject = new JSONObject();
+            callObject.put("calls", stats.calls.get());
+            callObject.put("errors", stats.errors.get());
+            callObject.put("rejected", stats.rejected.get());
+            callObject.put("queueWait", stats.queueWait.toJSON());
+            callObject.put("execution", stats.execution.toJSON());
+            json.put(entry.getKey(), callObject);
+        }
+        return json;
+    }
+
+    private static CallStats callStats(ConcurrentMap<String, CallStats> calls, String name) {
+        CallStats stats = calls.get(name);
+        if (stats == null) {
+            CallStats created = new CallStats();
+            stats = calls.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    static class CallStats {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final Histogram queueWait = new Histogram();
+        final Histogram execution = new Histogram();
+    }
+
+    static class EventStats {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong journaled = new AtomicLong();
+    }
+
+    static class PushStats {
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong raised = new AtomicLong();
+        final AtomicLong filtered = new AtomicLong();
+        final AtomicLong handled = new AtomicLong();
+        final Histogram handling = new Histogram();
+    }
+
+    /**
+     * Latency histogram with power-of-two microsecond buckets. Bucket 0 holds
+     * durations under 1 microsecond, bucket i durations from 2^(i-1) up to
+     * 2^i microseconds, and the last bucket everything from about 4 seconds
+     * up.
+     */
+    static class Histogram {
+        static final int BUCKETS = 24;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+
+            long micros = nanos / 1000;
+            int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        /**
+         * @return Upper bound in milliseconds of the bucket holding the given
+         * percentile, capped at the maximum, or 0 if nothing was recorded.
+         */
+        double percentileMs(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+
+            double maxMs = maxNanos.get() / 1e6;
+            long target = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min((1L << i) / 1000.0, maxMs);
+                }
+            }
+            return maxMs;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            long total = count.get();
+
+            JSONArray bucketCounts = new JSONArray();
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketCounts.put(buckets.get(i));
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            json.put("meanMs", total == 0 ? 0 : totalNanos.get() / 1e6 / total);
+            json.put("maxMs", maxNanos.get() / 1e6);
+            json.put("p50Ms", percentileMs(50));
+            json.put("p90Ms", percentileMs(90));
+            json.put("p99Ms", percentileMs(99));
+            json.put("buckets", bucketCounts);
+            return json;
+        }
+    }
+}
@@ -1,29 +1,31 @@
 package com.urbanairship.phonegap;
 
-import java.lang.reflect.Method;
+import java.io.File;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.app.Application;
-import android.os.Bundle;
-import android.os.RemoteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import com.urbanairship.AirshipConfigOptions;
 import com.urbanairship.Logger;
@@ -32,63 +34,234 @@ import com.urbanairship.location.LocationPreferences;
 import com.urbanairship.location.UALocationManager;
 import com.urbanairship.push.PushManager;
 import com.urbanairship.push.PushPreferences;
-import com.urbanairship.util.ServiceNotBoundException;
 
 public class PushNotificationPlugin extends CordovaPlugin {
 
-    private static final String PRODUCTION_KEY = "com.urbanairship.production_app_key";
-    private static final String PRODUCTION_SECRET = "com.urbanairship.production_app_secret";
-    private static final String DEVELOPMENT_KEY = "com.urbanairship.development_app_key";
-    private static final String DEVELOPMENT_SECRET = "com.urbanairship.development_app_secret";
-    private static final String IN_PRODUCTION = "com.urbanairship.in_production";
-    private static final String GCM_SENDER = "com.urbanairship.gcm_sender";
+
+    /**
+     * An action that can be called from JavaScript through cordova.exec.
+     */
+    public interface PluginAction {
+        void execute(JSONArray data, CallbackContext callbackContext);
+    }
 
     // @formatter:off
-    private static final List<String> knownActions = Arrays.asList(
-        "takeOff",
-        "isPushEnabled", "enablePush", "disablePush",
-        "getIncoming",
-        "getPushID",
-        "getTags", "setTags",
-        "getAlias", "setAlias",
-        "isSoundEnabled", "setSoundEnabled",
-        "isVibrateEnabled", "setVibrateEnabled",
-        "isQuietTimeEnabled", "setQuietTimeEnabled",
-        "getQuietTime", "setQuietTime",
-        "isInQuietTime",
-        "isLocationEnabled", "enableLocation", "disableLocation",
-        "recordCurrentLocation",
-        "enableBackgroundLocation", "disableBackgroundLocation"
+    private static final List<String> SNAPSHOT_FIELDS = Arrays.asList(
+        "pushEnabled", "soundEnabled", "vibrateEnabled",
+        "quietTimeEnabled", "inQuietTime", "quietTime",
+        "tags", "alias", "pushID",
+        "locationEnabled"
     );
     // @formatter:on
 
-    public static String incomingAlert = "";
-    public static Map<String, String> incomingExtras = new HashMap<String, String>();
+    private static final int INCOMING_CAPACITY = 32;
+    private static final int DEFAULT_INCOMING_BATCH_SIZE = 10;
+
+    // Notifications opened by the user, oldest first
+    static final NotificationInbox incomingNotifications = new NotificationInbox(INCOMING_CAPACITY);
+
+    // Last registration, for dropping repeated registration events and answering getPushID
+    static final RegistrationCache registration = new RegistrationCache();
+
+    // Bridge call, broadcast and event counters, shared with the PushReceiver
+    static final PluginStats stats = new PluginStats();
 
     // Used to raise pushes and registration from the PushReceiver
     private static PushNotificationPlugin instance;
 
+    // Orders events journaled before takeOff ahead of events sent after it
+    private static final Object pendingEventsLock = new Object();
+
+    // Level set through setLogLevel, kept across takeOff. -1 if not set.
+    private static volatile int logLevelOverride = -1;
+
+    // Set by the app to handle data pushes natively
+    static volatile DataPushHandler dataPushHandler;
+
     private PushPreferences pushPrefs;
     private LocationPreferences locationPrefs;
 
-    private ExecutorService executorService = Executors.newFixedThreadPool(1);
+    // Startup stage -> duration in milliseconds, in the order the stages ran
+    private final Map<String, Double> startupTimings = Collections.synchronizedMap(new LinkedHashMap<String, Double>());
+
+    private final ActionScheduler scheduler = new ActionScheduler();
+    // Set by takeOff, replaced by reconfigure
+    private volatile PluginConfig config;
+
+    private EventDispatcher eventDispatcher;
+    private EventTransport.Callback callbackTransport;
+    // Separate queue for data pushes so bursts of them do not delay alerts
+    private EventDispatcher dataDispatcher;
+    private EventTransport.Callback dataTransport;
+    private volatile String eventTransportName = EventTransport.LOAD_URL;
+    private final SettingsWriter settingsWriter = new SettingsWriter(scheduler);
+    private final LocationScheduler locationScheduler = new LocationScheduler(scheduler);
+
+    private QuietTimeSchedule quietTimeSchedule;
+
+    // Day and window last written to UA's daily quiet time interval, guarded by this
+    private int syncedQuietTimeDay = -1;
+    private QuietTimeSchedule.Window syncedQuietTimeWindow;
+
+    // Moves UA's quiet time to the new day's window at local midnight. Handler
+    // delays stop while the device sleeps, so onResume and raisePush sync too.
+    private static final long QUIET_TIME_SYNC_SLACK_MS = 1000;
+    private final Handler quietTimeHandler = new Handler(Looper.getMainLooper());
+    private final Runnable quietTimeSyncRunnable = new Runnable() {
+        public void run() {
+            syncQuietTime(false);
+            scheduleQuietTimeSync();
+        }
+    };
+
+    // Guarded by this
+    private Set<String> tagsObjectSource;
+    private JSONObject tagsObject;
+
+    // Set once takeOff has loaded the preferences the read and write lanes rely on
+    private volatile boolean flying = false;
+
+    // Page lifecycle, events are held unless the page is loaded and the app
+    // is in the foreground. Guarded by this.
+    private boolean pageLoading = false;
+    private boolean paused = false;
+    private boolean destroyed = false;
+    private final AtomicLong pageResetCount = new AtomicLong();
+
+    // Action name -> handler, built once so execute does a single hash lookup
+    private final Map<String, RegisteredAction> actions = new ConcurrentHashMap<String, RegisteredAction>();
 
     public PushNotificationPlugin() {
-        Logger.logLevel = android.util.Log.DEBUG;
         Logger.info("PushNotificationPlugin constructor");
-        // STEROIDSIFIED Do not register until takeOff
+        registerActions();
+        // STEROIDSIFIED Do not register with Urban Airship until takeOff
+    }
+
+    /**
+     * Registers an action that can be called from JavaScript. Replaces any
+     * action previously registered under the same name. The action runs
+     * serialized with takeOff and the other lifecycle actions.
+     */
+    public void registerAction(String name, PluginAction action) {
+        registerAction(name, ActionScheduler.Lane.LIFECYCLE, action);
+    }
+
+    void registerAction(String name, ActionScheduler.Lane lane, PluginAction action) {
+        actions.put(name, new RegisteredAction(lane, action));
     }
 
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         Logger.info("Initializing PushNotificationPlugin");
         super.initialize(cordova, webView);
+        eventDispatcher = new EventDispatcher(webView);
+        callbackTransport = new EventTransport.Callback(new EventTransport.LoadUrl(webView));
+
+        // Without an onDataPush callback, data pushes are fired like any other event
+        dataTransport = new EventTransport.Callback(new EventTransport() {
+            @Override
+            public void deliver(List<EventDispatcher.Event> batch) {
+                eventDispatcher.getTransport().deliver(batch);
+            }
+        });
+        dataDispatcher = new EventDispatcher(webView, true);
+        dataDispatcher.setTransport(dataTransport);
+        dataDispatcher.configure(EventDispatcher.DEFAULT_DATA_MAX_BATCH_SIZE, EventDispatcher.DEFAULT_DATA_FLUSH_INTERVAL_MS);
+        EventJournal.init(cordova.getActivity().getApplicationContext());
+        quietTimeSchedule = new QuietTimeSchedule(new File(cordova.getActivity().getApplicationContext().getFilesDir(),
+                QuietTimeSchedule.FILE_NAME));
 
         // STEROIDSIFIED Do not takeOff automatically
         // Autopilot.automaticTakeOff(cordova.getActivity().getApplication());
     }
 
-    private static JSONObject notificationObject(String message, Map<String, String> extras) {
+    /**
+     * Called when the WebView navigates or reloads. Events are held until the
+     * new page has loaded, and callbacks registered by the old page are
+     * dropped.
+     */
+    @Override
+    public void onReset() {
+        pageResetCount.incrementAndGet();
+        callbackTransport.setCallbackContext(null);
+        dataTransport.setCallbackContext(null);
+        // The new page gets its own registration event and subscriptions, but
+        // only when this plugin owns them; a newer page keeps its own
+        synchronized (pendingEventsLock) {
+            if (instance == this) {
+                registration.reset();
+                PushReceiver.subscriptions.clear();
+            }
+        }
+        synchronized (this) {
+            pageLoading = true;
+            updateEventHold();
+        }
+        super.onReset();
+    }
+
+    @Override
+    public Object onMessage(String id, Object data) {
+        if ("onPageStarted".equals(id)) {
+            setPageLoading(true);
+        } else if ("onPageFinished".equals(id)) {
+            setPageLoading(false);
+        }
+        return super.onMessage(id, data);
+    }
+
+    @Override
+    public void onPause(boolean multitasking) {
+        synchronized (this) {
+            paused = true;
+            updateEventHold();
+        }
+        super.onPause(multitasking);
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        synchronized (this) {
+            paused = false;
+            updateEventHold();
+        }
+
+        // Catch up on a day change missed while the device slept
+        if (flying) {
+            syncQuietTime(false);
+            scheduleQuietTimeSync();
+        }
+        super.onResume(multitasking);
+    }
+
+    /**
+     * Events still held are journaled for the next plugin instance, and the
+     * shared instance is cleared so receivers stop sending to this WebView.
+     */
+    @Override
+    public void onDestroy() {
+        Logger.info("Destroying PushNotificationPlugin, shutting down action lanes");
+        synchronized (this) {
+            destroyed = true;
+            updateEventHold();
+        }
+
+        synchronized (pendingEventsLock) {
+            if (instance == this) {
+                instance = null;
+                // Only when this page owns them, a newer page keeps its own
+                PushReceiver.subscriptions.clear();
+            }
+            flying = false;
+            journalHeldEvents();
+        }
+        quietTimeHandler.removeCallbacks(quietTimeSyncRunnable);
+
+        scheduler.shutdown();
+        super.onDestroy();
+    }
+
+    static JSONObject notificationObject(String message, Map<String, String> extras) {
         JSONObject data = new JSONObject();
         try {
             data.put("message", message);
@@ -99,105 +272,315 @@ public class PushNotificationPlugin extends CordovaPlugin {
         return data;
     }
 
-    static void raisePush(String message, Map<String, String> extras) {
-        if (instance == null) {
-            return;
+    /**
+     * @param notification Push JSON built by PushReceiver.getNotificationJson.
+     * @param receivedAt System.nanoTime() when the broadcast was received.
+     */
+    static void raisePush(String pushID, String notification, long receivedAt) {
+        // Keep UA's quiet time on today's window for the next push
+        PushNotificationPlugin plugin = instance;
+        if (plugin != null && plugin.flying) {
+            plugin.syncQuietTime(false);
         }
 
-        sendEvent("urbanairship.push", notificationObject(message, extras).toString());
+        sendEvent("urbanairship.push", notification, pushID, receivedAt);
     }
 
-    static void raiseRegistration(Boolean valid, String pushID) {
-        if (instance == null) {
-            return;
+    /**
+     * Raises a push without an alert on the data lane.
+     */
+    static void raiseDataPush(String pushID, String notification, long receivedAt) {
+        sendEvent("urbanairship.push", notification, pushID, receivedAt, true);
+    }
+
+    static void raiseRegistration(Boolean valid, String pushID, long receivedAt) {
+        // Tags may have changed with the registration
+        PushNotificationPlugin plugin = instance;
+        if (plugin != null) {
+            plugin.settingsWriter.invalidateTags();
         }
 
-        JSONObject data = new JSONObject();
-        try {
-            if (valid) {
-                data.put("pushID", pushID);
-            } else {
-                data.put("error", "Invalid registration.");
+        if (!registration.update(valid, pushID)) {
+            if (LogLevels.isLoggable(Log.DEBUG)) {
+                Logger.debug("Registration unchanged, not raising it");
             }
-        } catch (JSONException e) {
-            Logger.error("Error in raiseRegistration", e);
+            return;
         }
 
-        sendEvent("urbanairship.registration", data.toString());
+        JsonWriter data = new JsonWriter(64).beginObject();
+        if (!valid) {
+            data.name("error").value("Invalid registration.");
+        } else if (pushID != null) {
+            data.name("pushID").value(pushID);
+        }
+        data.endObject();
+
+        sendEvent("urbanairship.registration", data.toString(), null, receivedAt);
     }
 
     static void sendEvent(String event, String data) {
-        if (instance == null) {
-            return;
-        }
+        sendEvent(event, data, null, 0);
+    }
 
-        Logger.info("Sending event " + event + ": " + data);
-        String eventURL = String.format("javascript:try{cordova.fireDocumentEvent('%s', %s);}catch(e){console.log('exception firing event %s from native');};", event, data, event);
+    /**
+     * Sends an event to the WebView, or journals it to be replayed once
+     * takeOff completes if no plugin is ready to receive it yet.
+     *
+     * @param pushID UA push ID used to drop duplicates while journaled, or null.
+     * @param receivedAt System.nanoTime() when the broadcast behind the event
+     * was received, or 0 if unknown.
+     */
+    static void sendEvent(String event, String data, String pushID, long receivedAt) {
+        sendEvent(event, data, pushID, receivedAt, false);
+    }
 
-        instance.webView.loadUrl(eventURL);
+    private static void sendEvent(String event, String data, String pushID, long receivedAt, boolean dataLane) {
+        PushNotificationPlugin plugin;
+        synchronized (pendingEventsLock) {
+            plugin = instance;
+            if (plugin == null || !plugin.flying) {
+                EventJournal journal = EventJournal.shared();
+                if (journal != null) {
+                    if (LogLevels.isLoggable(Log.INFO)) {
+                        Logger.info("Plugin not ready, journaling event " + event);
+                    }
+                    journal.append(event, data, pushID, dataLane);
+                    stats.recordEvent(event, true);
+                } else {
+                    Logger.warn("Plugin not ready and no event journal, dropping event " + event);
+                }
+                return;
+            }
+
+            // Queued under the lock so onDestroy cannot miss the event
+            (dataLane ? plugin.dataDispatcher : plugin.eventDispatcher).dispatch(event, data, pushID, receivedAt);
+        }
+
+        if (LogLevels.isLoggable(Log.VERBOSE)) {
+            Logger.verbose("Sent event " + event + ": " + data);
+        }
+        stats.recordEvent(event, false);
     }
 
     @Override
     public boolean execute(final String action, final JSONArray data, final CallbackContext callbackContext) {
-        Logger.info("Execute: " + action);
-        Logger.info("data: " + data);
+        if (LogLevels.isLoggable(Log.VERBOSE)) {
+            Logger.verbose("Execute: " + action + ", data: " + data);
+        }
 
-        if (!knownActions.contains(action)) {
-            Logger.info("Invalid action: " + action);
+        final RegisteredAction registeredAction = findAction(action);
+        if (registeredAction == null) {
+            Logger.warn("Invalid action: " + action);
             return false;
         }
 
-        executorService.execute(new Runnable() {
+        // A call from JavaScript means the page is up, even if onPageFinished
+        // has not arrived
+        setPageLoading(false);
+
+        // Until takeOff has finished everything stays on the lifecycle lane so
+        // reads and writes cannot run ahead of the preferences being loaded.
+        ActionScheduler.Lane lane = flying ? registeredAction.lane : ActionScheduler.Lane.LIFECYCLE;
+
+        final long queuedAt = System.nanoTime();
+        boolean queued = scheduler.submit(lane, new Runnable() {
             @Override
             public void run() {
+                long startedAt = System.nanoTime();
+                boolean failed = false;
                 try {
-                    Logger.info("Plugin Execute: " + action);
-                    Method method = PushNotificationPlugin.class.getDeclaredMethod(action, JSONArray.class, CallbackContext.class);
-                    method.invoke(PushNotificationPlugin.this, data, callbackContext);
+                    if (LogLevels.isLoggable(Log.VERBOSE)) {
+                        Logger.verbose("Plugin Execute: " + action);
+                    }
+                    registeredAction.action.execute(data, callbackContext);
                 } catch (Exception e) {
+                    failed = true;
                     Logger.error(e);
+                } finally {
+                    stats.recordAction(action, startedAt - queuedAt, System.nanoTime() - startedAt, failed);
                 }
             }
         });
 
+        if (!queued) {
+            stats.recordRejectedAction(action);
+            callbackContext.error("Unable to queue " + action + ", plugin is busy or shut down");
+        }
+
         return true;
     }
 
+    RegisteredAction findAction(String name) {
+        return actions.get(name);
+    }
+
     // Actions
 
+    // @formatter:off
+    private void registerActions() {
+        registerAction("takeOff", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { takeOff(data, callbackContext); }
+        });
+        registerAction("setLogLevel", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setLogLevel(data, callbackContext); }
+        });
+        registerAction("getStats", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getStats(data, callbackContext); }
+        });
+        registerAction("resetStats", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { resetStats(data, callbackContext); }
+        });
+        registerAction("reconfigure", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { reconfigure(data, callbackContext); }
+        });
+        registerAction("onEvent", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { onEvent(data, callbackContext); }
+        });
+        registerAction("onDataPush", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { onDataPush(data, callbackContext); }
+        });
+        registerAction("getStartupTimings", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getStartupTimings(data, callbackContext); }
+        });
+        registerAction("isPushEnabled", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isPushEnabled(data, callbackContext); }
+        });
+        registerAction("enablePush", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { enablePush(data, callbackContext); }
+        });
+        registerAction("disablePush", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { disablePush(data, callbackContext); }
+        });
+        registerAction("getIncoming", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getIncoming(data, callbackContext); }
+        });
+        registerAction("getIncomingBatch", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getIncomingBatch(data, callbackContext); }
+        });
+        registerAction("getDuplicateStats", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getDuplicateStats(data, callbackContext); }
+        });
+        registerAction("subscribe", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { subscribe(data, callbackContext); }
+        });
+        registerAction("unsubscribe", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { unsubscribe(data, callbackContext); }
+        });
+        registerAction("getPushID", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getPushID(data, callbackContext); }
+        });
+        registerAction("getSettingsSnapshot", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getSettingsSnapshot(data, callbackContext); }
+        });
+        registerAction("getTags", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getTags(data, callbackContext); }
+        });
+        registerAction("setTags", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setTags(data, callbackContext); }
+        });
+        registerAction("addTags", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { addTags(data, callbackContext); }
+        });
+        registerAction("removeTags", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { removeTags(data, callbackContext); }
+        });
+        registerAction("getAlias", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getAlias(data, callbackContext); }
+        });
+        registerAction("setAlias", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setAlias(data, callbackContext); }
+        });
+        registerAction("applySettings", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { applySettings(data, callbackContext); }
+        });
+        registerAction("isSoundEnabled", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isSoundEnabled(data, callbackContext); }
+        });
+        registerAction("setSoundEnabled", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setSoundEnabled(data, callbackContext); }
+        });
+        registerAction("isVibrateEnabled", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isVibrateEnabled(data, callbackContext); }
+        });
+        registerAction("setVibrateEnabled", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setVibrateEnabled(data, callbackContext); }
+        });
+        registerAction("isQuietTimeEnabled", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isQuietTimeEnabled(data, callbackContext); }
+        });
+        registerAction("setQuietTimeEnabled", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setQuietTimeEnabled(data, callbackContext); }
+        });
+        registerAction("getQuietTime", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getQuietTime(data, callbackContext); }
+        });
+        registerAction("setQuietTime", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setQuietTime(data, callbackContext); }
+        });
+        registerAction("getQuietTimeSchedule", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { getQuietTimeSchedule(data, callbackContext); }
+        });
+        registerAction("setQuietTimeSchedule", ActionScheduler.Lane.WRITE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { setQuietTimeSchedule(data, callbackContext); }
+        });
+        registerAction("isInQuietTime", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isInQuietTime(data, callbackContext); }
+        });
+        registerAction("isLocationEnabled", ActionScheduler.Lane.READ, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { isLocationEnabled(data, callbackContext); }
+        });
+        registerAction("enableLocation", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { enableLocation(data, callbackContext); }
+        });
+        registerAction("disableLocation", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { disableLocation(data, callbackContext); }
+        });
+        registerAction("recordCurrentLocation", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { recordCurrentLocation(data, callbackContext); }
+        });
+        registerAction("enableBackgroundLocation", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { enableBackgroundLocation(data, callbackContext); }
+        });
+        registerAction("disableBackgroundLocation", ActionScheduler.Lane.LIFECYCLE, new PluginAction() {
+            public void execute(JSONArray data, CallbackContext callbackContext) { disableBackgroundLocation(data, callbackContext); }
+        });
+    }
+    // @formatter:on
+
     // STEROIDSIFIED brought back takeOff plugin method
     void takeOff(JSONArray data, CallbackContext callbackContext) {
         Logger.info("Takeoff called.");
         Logger.info("old instance="+instance);
         if (instance != null) {
             Logger.info("Cancelling second takeoff.");
+            // A reloaded page calls takeOff again on the same plugin
+            if (instance == this && flying) {
+                callbackContext.success();
+            }
             return;
         }
 
         Logger.info("setting instance="+instance);
         instance = this;
+        registration.reset();
+
+        long takeOffStart = System.nanoTime();
+        long stageStart = takeOffStart;
 
         Application application = cordova.getActivity().getApplication();
 
         // Create the default options, will pull any config from the usual place - assets/airshipconfig.properties
         AirshipConfigOptions options = AirshipConfigOptions.loadDefaultOptions(application);
 
-        Bundle configuredOptions = cordova.getActivity().getIntent().getExtras();
-
-        options.productionAppKey = configuredOptions.getString(PRODUCTION_KEY);
-        options.productionAppSecret = configuredOptions.getString(PRODUCTION_SECRET);
-        options.developmentAppKey = configuredOptions.getString(DEVELOPMENT_KEY);
-        options.developmentAppSecret = configuredOptions.getString(DEVELOPMENT_SECRET);
-        options.gcmSender = configuredOptions.getString(GCM_SENDER);
-        options.inProduction = configuredOptions.getString(IN_PRODUCTION, "false").equals("true");
-        options.developmentLogLevel = android.util.Log.DEBUG;
-        options.productionLogLevel = android.util.Log.DEBUG;
-        Logger.info("options.productionAppKey="+options.productionAppKey);
-        Logger.info("options.productionAppSecret="+options.productionAppSecret);
-        Logger.info("options.developmentAppKey="+options.developmentAppKey);
-        Logger.info("options.developmentAppSecret="+options.developmentAppSecret);
-        Logger.info("options.gcmSender="+options.gcmSender);
-        Logger.info("options.inProduction="+options.inProduction);
+        PluginConfig config = PluginConfig.fromBundle(cordova.getActivity().getIntent().getExtras());
+        config.applyTo(options);
+
+        if (LogLevels.isLoggable(Log.DEBUG)) {
+            Logger.debug("options.productionAppKey=" + options.productionAppKey);
+            Logger.debug("options.developmentAppKey=" + options.developmentAppKey);
+            Logger.debug("options.gcmSender=" + options.gcmSender);
+            Logger.debug("options.inProduction=" + options.inProduction);
+        }
 
         // Always enable the use of the location service. This does not mean
         // that location is enabled. Still need to call enableLocation for that.
@@ -205,24 +588,118 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
         // Set the minSDK to 14. It just controls logging error messages for different platform features.
         options.minSdkVersion = 14;
+        stageStart = recordStartupStage("loadConfig", stageStart);
 
         UAirship.takeOff(application, options);
         instance = this;
+        if (logLevelOverride >= 0) {
+            Logger.logLevel = logLevelOverride;
+        }
+        config = config.withServices(UAirship.shared().getAirshipConfigOptions());
+        applyTuning(config);
+        this.config = config;
+        stageStart = recordStartupStage("airshipTakeOff", stageStart);
 
         Logger.info("setting intent receiver class");
         PushManager.shared().setIntentReceiver(PushReceiver.class);
 
-        if (UAirship.shared().getAirshipConfigOptions().pushServiceEnabled) {
+        if (config.pushServiceEnabled) {
             Logger.info("calling enablePush on start");
             PushManager.enablePush();
         }
+        stageStart = recordStartupStage("enablePush", stageStart);
 
+        // Core push is ready once its preferences are loaded. Location
+        // preferences are loaded on first use.
         Logger.info("get prefs");
         pushPrefs = PushManager.shared().getPreferences();
-        locationPrefs = UALocationManager.shared().getPreferences();
+        loadQuietTimeSchedule();
+        scheduleQuietTimeSync();
+        stageStart = recordStartupStage("pushPreferences", stageStart);
 
         Logger.info("calling success callback.");
         callbackContext.success();
+        recordStartupStage("ready", takeOffStart);
+
+        stageStart = System.nanoTime();
+        replayPendingEvents();
+        recordStartupStage("replayPendingEvents", stageStart);
+    }
+
+    /**
+     * Changes tuning options without relaunching the Activity. Takes an
+     * object of option keys, as used in the preferences, to new values.
+     */
+    void reconfigure(JSONArray data, CallbackContext callbackContext) {
+        if (!requireTakenOff(callbackContext)) {
+            return;
+        }
+
+        try {
+            PluginConfig config = this.config.withOverrides(data.getJSONObject(0));
+            applyTuning(config);
+            if (config.logLevel >= 0 && logLevelOverride < 0) {
+                Logger.logLevel = config.logLevel;
+            }
+            this.config = config;
+
+            Logger.info("Reconfigured plugin");
+            callbackContext.success(config.toJSON());
+        } catch (JSONException e) {
+            Logger.error("Error reading reconfigure JSON", e);
+            callbackContext.error("Error reading reconfigure JSON");
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    void setLogLevel(JSONArray data, CallbackContext callbackContext) {
+        int level = LogLevels.parse(data.optString(0, null), -1);
+        if (level < 0) {
+            callbackContext.error("Unknown log level: " + data.optString(0));
+            return;
+        }
+
+        String previous = LogLevels.name(Logger.logLevel);
+        logLevelOverride = level;
+        Logger.logLevel = level;
+
+        Logger.warn("Log level changed from " + previous + " to " + LogLevels.name(level));
+        callbackContext.success(previous);
+    }
+
+    /**
+     * Registers the callback that events are delivered through when the
+     * callback transport is selected. The callback is kept open.
+     */
+    void onEvent(JSONArray data, CallbackContext callbackContext) {
+        callbackTransport.setCallbackContext(callbackContext);
+
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * Registers the callback that data pushes are delivered through, in
+     * batches, instead of as urbanairship.push events. The callback is kept
+     * open.
+     */
+    void onDataPush(JSONArray data, CallbackContext callbackContext) {
+        dataTransport.setCallbackContext(callbackContext);
+
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * Sets a handler that sees silent data pushes before JavaScript does, or
+     * null to remove it. Pushes the handler returns true for are not sent to
+     * JavaScript.
+     */
+    public static void setDataPushHandler(DataPushHandler handler) {
+        dataPushHandler = handler;
     }
 
     void enablePush(JSONArray data, CallbackContext callbackContext) {
@@ -297,33 +774,210 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
     void isInQuietTime(JSONArray data, CallbackContext callbackContext) {
         if (requirePushServiceEnabled(callbackContext)) {
-            int value = pushPrefs.isInQuietTime() ? 1 : 0;
+            int value = inQuietTime() ? 1 : 0;
             callbackContext.success(value);
         }
     }
 
     void isLocationEnabled(JSONArray data, CallbackContext callbackContext) {
         if (requireLocationServiceEnabled(callbackContext)) {
-            int value = locationPrefs.isLocationEnabled() ? 1 : 0;
+            int value = getLocationPrefs().isLocationEnabled() ? 1 : 0;
             callbackContext.success(value);
         }
     }
 
     void getIncoming(JSONArray data, CallbackContext callbackContext) {
-        String alert = PushNotificationPlugin.incomingAlert;
-        Map<String, String> extras = PushNotificationPlugin.incomingExtras;
-        JSONObject obj = notificationObject(alert, extras);
+        // The newest open is the one that brought the app to the foreground.
+        // Older ones are left for getIncomingBatch.
+        NotificationInbox.Notification notification = incomingNotifications.pollLatest();
+
+        // Empty notification until the next background push is opened
+        if (notification == null) {
+            callbackContext.success(notificationObject("", new HashMap<String, String>()));
+        } else {
+            callbackContext.success(notificationObject(notification.alert, notification.extras));
+        }
+    }
+
+    void getIncomingBatch(JSONArray data, CallbackContext callbackContext) {
+        int max = data.optInt(0, DEFAULT_INCOMING_BATCH_SIZE);
+
+        JSONArray notifications = new JSONArray();
+        NotificationInbox.Notification notification;
+        while (notifications.length() < max && (notification = incomingNotifications.poll()) != null) {
+            notifications.put(notificationObject(notification.alert, notification.extras));
+        }
+
+        try {
+            JSONObject returnObject = new JSONObject();
+            returnObject.put("notifications", notifications);
+            returnObject.put("overflowCount", incomingNotifications.getOverflowCount());
+
+            Logger.info("Returning " + notifications.length() + " incoming notifications");
+            callbackContext.success(returnObject);
+        } catch (JSONException e) {
+            Logger.error("Error building incoming notifications JSON", e);
+            callbackContext.error("Error building incoming notifications JSON");
+        }
+    }
+
+    void getStartupTimings(JSONArray data, CallbackContext callbackContext) {
+        JSONObject returnObject;
+        synchronized (startupTimings) {
+            returnObject = new JSONObject(startupTimings);
+        }
+
+        Logger.info("Returning startup timings");
+        callbackContext.success(returnObject);
+    }
+
+    void getStats(JSONArray data, CallbackContext callbackContext) {
+        try {
+            JSONObject returnObject = stats.toJSON();
+
+            // Counters below are cumulative and not cleared by resetStats
+            JSONObject lanesObject = new JSONObject();
+            for (ActionScheduler.Lane lane : ActionScheduler.Lane.values()) {
+                JSONObject laneObject = new JSONObject();
+                laneObject.put("queueDepth", scheduler.getQueueDepth(lane));
+                laneObject.put("maxQueueDepth", scheduler.getMaxQueueDepth(lane));
+                laneObject.put("submitted", scheduler.getSubmittedCount(lane));
+                laneObject.put("rejected", scheduler.getRejectedCount(lane));
+                laneObject.put("completed", scheduler.getCompletedCount(lane));
+                lanesObject.put(lane.name().toLowerCase(), laneObject);
+            }
+            returnObject.put("lanes", lanesObject);
+
+            if (eventDispatcher != null) {
+                JSONObject dispatcherObject = dispatcherObject(eventDispatcher);
+                dispatcherObject.put("transport", eventTransportName);
+                returnObject.put("dispatcher", dispatcherObject);
+
+                JSONObject dataDispatcherObject = dispatcherObject(dataDispatcher);
+                dataDispatcherObject.put("transport", dataTransport.hasCallbackContext() ? "onDataPush" : eventTransportName);
+                returnObject.put("dataDispatcher", dataDispatcherObject);
+            }
+
+            JSONObject pageObject = new JSONObject();
+            synchronized (this) {
+                pageObject.put("loading", pageLoading);
+                pageObject.put("paused", paused);
+            }
+            pageObject.put("resets", pageResetCount.get());
+            returnObject.put("page", pageObject);
+
+            JSONObject settingsObject = new JSONObject();
+            settingsObject.put("requested", settingsWriter.getRequestedCount());
+            settingsObject.put("applied", settingsWriter.getAppliedCount());
+            settingsObject.put("coalesced", settingsWriter.getCoalescedCount());
+            settingsObject.put("registrationUpdates", settingsWriter.getRegistrationUpdateCount());
+            settingsObject.put("flushes", settingsWriter.getFlushCount());
+            returnObject.put("settings", settingsObject);
+
+            JSONObject locationObject = new JSONObject();
+            locationObject.put("requested", locationScheduler.getRequestedCount());
+            locationObject.put("recorded", locationScheduler.getRecordedCount());
+            locationObject.put("coalesced", locationScheduler.getCoalescedCount());
+            locationObject.put("suppressed", locationScheduler.getSuppressedCount());
+            locationObject.put("binds", locationScheduler.getBindCount());
+            returnObject.put("location", locationObject);
+
+            returnObject.put("incomingOverflow", incomingNotifications.getOverflowCount());
+            returnObject.put("duplicatePushes", PushReceiver.recentPushIds.getHitCount());
+
+            JSONObject registrationsObject = new JSONObject();
+            registrationsObject.put("raised", registration.getChangeCount());
+            registrationsObject.put("unchanged", registration.getUnchangedCount());
+            returnObject.put("registrations", registrationsObject);
+
+            JSONObject subscriptionsObject = new JSONObject();
+            subscriptionsObject.put("count", PushReceiver.subscriptions.size());
+            subscriptionsObject.put("matched", PushReceiver.subscriptions.getMatchedCount());
+            subscriptionsObject.put("filtered", PushReceiver.subscriptions.getFilteredCount());
+            returnObject.put("subscriptions", subscriptionsObject);
+
+            Logger.info("Returning stats");
+            callbackContext.success(returnObject);
+        } catch (JSONException e) {
+            Logger.error("Error building stats JSON", e);
+            callbackContext.error("Error building stats JSON");
+        }
+    }
 
-        callbackContext.success(obj);
+    private static JSONObject dispatcherObject(EventDispatcher dispatcher) throws JSONException {
+        long latencyCount = dispatcher.getLatencyCount();
+
+        JSONObject dispatcherObject = new JSONObject();
+        dispatcherObject.put("held", dispatcher.isHeld());
+        dispatcherObject.put("depth", dispatcher.getDepth());
+        dispatcherObject.put("maxDepth", dispatcher.getMaxDepth());
+        dispatcherObject.put("dropped", dispatcher.getDroppedCount());
+        dispatcherObject.put("collapsed", dispatcher.getCollapsedCount());
+        dispatcherObject.put("events", dispatcher.getEventCount());
+        dispatcherObject.put("flushes", dispatcher.getFlushCount());
+        dispatcherObject.put("coalesced", dispatcher.getCoalescedCount());
+        dispatcherObject.put("lastBatchSize", dispatcher.getLastBatchSize());
+        dispatcherObject.put("deliveryLatencyMeanMs", latencyCount == 0 ? 0 : dispatcher.getLatencyTotalNanos() / 1e6 / latencyCount);
+        dispatcherObject.put("deliveryLatencyMaxMs", dispatcher.getLatencyMaxNanos() / 1e6);
+        dispatcherObject.put("deliveryLatencyLastMs", dispatcher.getLastLatencyNanos() / 1e6);
+        return dispatcherObject;
+    }
 
-        // reset incoming push data until the next background push comes in
-        PushNotificationPlugin.incomingAlert = "";
-        PushNotificationPlugin.incomingExtras = new HashMap<String, String>();
+    void resetStats(JSONArray data, CallbackContext callbackContext) {
+        stats.reset();
+        callbackContext.success();
+    }
+
+    void getDuplicateStats(JSONArray data, CallbackContext callbackContext) {
+        RecentPushIds recentPushIds = PushReceiver.recentPushIds;
+
+        try {
+            JSONObject returnObject = new JSONObject();
+            returnObject.put("duplicates", recentPushIds.getHitCount());
+            returnObject.put("unique", recentPushIds.getMissCount());
+            returnObject.put("tracked", recentPushIds.size());
+
+            Logger.info("Returning duplicate push stats");
+            callbackContext.success(returnObject);
+        } catch (JSONException e) {
+            Logger.error("Error building duplicate stats JSON", e);
+            callbackContext.error("Error building duplicate stats JSON");
+        }
+    }
+
+    /**
+     * Adds or replaces a push subscription. While any subscription exists,
+     * only matching pushes are raised.
+     */
+    void subscribe(JSONArray data, CallbackContext callbackContext) {
+        try {
+            PushSubscriptions.Subscription subscription = readSubscription(data.getJSONObject(0));
+            PushReceiver.subscriptions.subscribe(subscription);
+
+            Logger.info("Subscribed " + subscription.id);
+            callbackContext.success(subscription.id);
+        } catch (JSONException e) {
+            Logger.error("Error reading subscription JSON", e);
+            callbackContext.error("Error reading subscription JSON");
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    void unsubscribe(JSONArray data, CallbackContext callbackContext) {
+        String id = data.optString(0, null);
+        if (id == null || !PushReceiver.subscriptions.unsubscribe(id)) {
+            callbackContext.error("No subscription " + id);
+            return;
+        }
+
+        Logger.info("Unsubscribed " + id);
+        callbackContext.success();
     }
 
     void getPushID(JSONArray data, CallbackContext callbackContext) {
         if (requirePushServiceEnabled(callbackContext)) {
-            String pushID = PushManager.shared().getAPID();
+            String pushID = currentApid();
             pushID = pushID != null ? pushID : "";
             callbackContext.success(pushID);
         }
@@ -334,36 +988,66 @@ public class PushNotificationPlugin extends CordovaPlugin {
             return;
         }
 
-        Date[] quietTime = pushPrefs.getQuietTimeInterval();
+        try {
+            JSONObject returnObject = quietTimeObject();
 
-        int startHour = 0;
-        int startMinute = 0;
-        int endHour = 0;
-        int endMinute = 0;
+            Logger.info("Returning quiet time");
+            callbackContext.success(returnObject);
+        } catch (JSONException e) {
+            callbackContext.error("Error building quietTime JSON");
+        }
+    }
 
-        if (quietTime != null) {
-            Calendar start = new GregorianCalendar();
-            Calendar end = new GregorianCalendar();
-            start.setTime(quietTime[0]);
-            end.setTime(quietTime[1]);
+    void getQuietTimeSchedule(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
+            return;
+        }
 
-            startHour = start.get(Calendar.HOUR_OF_DAY);
-            startMinute = start.get(Calendar.MINUTE);
-            endHour = end.get(Calendar.HOUR_OF_DAY);
-            endMinute = end.get(Calendar.MINUTE);
+        try {
+            JSONArray windowsArray = new JSONArray();
+            for (QuietTimeSchedule.Window window : quietTimeSchedule.getWindows()) {
+                JSONObject windowObject = quietTimeObject(window);
+                JSONArray days = new JSONArray();
+                for (int day = 0; day < 7; day++) {
+                    if (window.hasDay(day)) {
+                        days.put(day);
+                    }
+                }
+                windowObject.put("days", days);
+                windowsArray.put(windowObject);
+            }
+
+            Logger.info("Returning quiet time schedule");
+            callbackContext.success(windowsArray);
+        } catch (JSONException e) {
+            callbackContext.error("Error building quietTime schedule JSON");
+        }
+    }
+
+    void getSettingsSnapshot(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
+            return;
+        }
+
+        JSONArray fields = data.optJSONArray(0);
+        if (fields == null || fields.length() == 0) {
+            fields = new JSONArray(SNAPSHOT_FIELDS);
         }
 
         try {
             JSONObject returnObject = new JSONObject();
-            returnObject.put("startHour", startHour);
-            returnObject.put("startMinute", startMinute);
-            returnObject.put("endHour", endHour);
-            returnObject.put("endMinute", endMinute);
+            for (int i = 0; i < fields.length(); ++i) {
+                String field = fields.getString(i);
+                if (!returnObject.has(field)) {
+                    putSnapshotField(returnObject, field);
+                }
+            }
 
-            Logger.info("Returning quiet time");
+            Logger.info("Returning settings snapshot");
             callbackContext.success(returnObject);
         } catch (JSONException e) {
-            callbackContext.error("Error building quietTime JSON");
+            Logger.error("Error building settings snapshot JSON", e);
+            callbackContext.error("Error building settings snapshot JSON");
         }
     }
 
@@ -372,10 +1056,8 @@ public class PushNotificationPlugin extends CordovaPlugin {
             return;
         }
 
-        Set<String> tags = PushManager.shared().getTags();
         try {
-            JSONObject returnObject = new JSONObject();
-            returnObject.put("tags", new JSONArray(tags));
+            JSONObject returnObject = tagsObject();
 
             Logger.info("Returning tags");
             callbackContext.success(returnObject);
@@ -400,10 +1082,7 @@ public class PushNotificationPlugin extends CordovaPlugin {
                 alias = null;
             }
 
-            Logger.info("Settings alias: " + alias);
-            PushManager.shared().setAlias(alias);
-
-            callbackContext.success();
+            settingsWriter.setAlias(alias).commit(callbackContext);
         } catch (JSONException e) {
             Logger.error("Error reading alias in callback", e);
             callbackContext.error("Error reading alias in callback");
@@ -416,16 +1095,41 @@ public class PushNotificationPlugin extends CordovaPlugin {
         }
 
         try {
-            HashSet<String> tagSet = new HashSet<String>();
-            JSONArray tagsArray = data.getJSONArray(0);
-            for (int i = 0; i < tagsArray.length(); ++i) {
-                tagSet.add(tagsArray.getString(i));
+            settingsWriter.setTags(readTags(data.getJSONArray(0))).commit(callbackContext);
+        } catch (JSONException e) {
+            Logger.error("Error reading tags JSON", e);
+            callbackContext.error("Error reading tags JSON");
+        }
+    }
+
+    void addTags(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
+            return;
+        }
+
+        try {
+            if (settingsWriter.addTags(readTags(data.getJSONArray(0)))) {
+                settingsWriter.commit(callbackContext);
+            } else {
+                callbackContext.success();
             }
+        } catch (JSONException e) {
+            Logger.error("Error reading tags JSON", e);
+            callbackContext.error("Error reading tags JSON");
+        }
+    }
 
-            Logger.info("Settings tags: " + tagSet);
-            PushManager.shared().setTags(tagSet);
+    void removeTags(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
+            return;
+        }
 
-            callbackContext.success();
+        try {
+            if (settingsWriter.removeTags(readTags(data.getJSONArray(0)))) {
+                settingsWriter.commit(callbackContext);
+            } else {
+                callbackContext.success();
+            }
         } catch (JSONException e) {
             Logger.error("Error reading tags JSON", e);
             callbackContext.error("Error reading tags JSON");
@@ -439,9 +1143,7 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
         try {
             boolean soundPreference = data.getBoolean(0);
-            pushPrefs.setSoundEnabled(soundPreference);
-            Logger.info("Settings Sound: " + soundPreference);
-            callbackContext.success();
+            settingsWriter.setSoundEnabled(soundPreference).commit(callbackContext);
         } catch (JSONException e) {
             Logger.error("Error reading soundEnabled in callback", e);
             callbackContext.error("Error reading soundEnabled in callback");
@@ -455,9 +1157,7 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
         try {
             boolean vibrationPreference = data.getBoolean(0);
-            pushPrefs.setVibrateEnabled(vibrationPreference);
-            Logger.info("Settings Vibrate: " + vibrationPreference);
-            callbackContext.success();
+            settingsWriter.setVibrateEnabled(vibrationPreference).commit(callbackContext);
         } catch (JSONException e) {
             Logger.error("Error reading vibrateEnabled in callback", e);
             callbackContext.error("Error reading vibrateEnabled in callback");
@@ -471,9 +1171,7 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
         try {
             boolean quietPreference = data.getBoolean(0);
-            pushPrefs.setQuietTimeEnabled(quietPreference);
-            Logger.info("Settings QuietTime: " + quietPreference);
-            callbackContext.success();
+            settingsWriter.setQuietTimeEnabled(quietPreference).commit(callbackContext);
         } catch (JSONException e) {
             Logger.error("Error reading quietTimeEnabled in callback", e);
             callbackContext.error("Error reading quietTimeEnabled in callback");
@@ -486,48 +1184,407 @@ public class PushNotificationPlugin extends CordovaPlugin {
         }
 
         try {
-            Calendar start = new GregorianCalendar();
-            Calendar end = new GregorianCalendar();
-            int startHour = data.getInt(0);
-            int startMinute = data.getInt(1);
-            int endHour = data.getInt(2);
-            int endMinute = data.getInt(3);
-
-            start.set(Calendar.HOUR_OF_DAY, startHour);
-            start.set(Calendar.MINUTE, startMinute);
-            end.set(Calendar.HOUR_OF_DAY, endHour);
-            end.set(Calendar.MINUTE, endMinute);
-
-            Logger.info("Settings QuietTime. Start: " + start.getTime() + ", End: " + end.getTime());
-            pushPrefs.setQuietTimeInterval(start.getTime(), end.getTime());
-            callbackContext.success();
+            setQuietTimeInterval(data.getInt(0), data.getInt(1), data.getInt(2), data.getInt(3));
+            settingsWriter.commit(callbackContext);
         } catch (JSONException e) {
             Logger.error("Error reading quietTime JSON", e);
             callbackContext.error("Error reading quietTime JSON");
+        } catch (IllegalArgumentException e) {
+            callbackContext.error("Invalid quietTime: " + e.getMessage());
         }
     }
 
-    void recordCurrentLocation(JSONArray data, CallbackContext callbackContext) {
-        if (!requireLocationServiceEnabled(callbackContext)) {
+    void setQuietTimeSchedule(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
             return;
         }
 
         try {
-            Logger.info("LOGGING LOCATION");
-            UALocationManager.shared().recordCurrentLocation();
-        } catch (ServiceNotBoundException e) {
-            Logger.info("Location not bound, binding now");
-            UALocationManager.bindService();
-        } catch (RemoteException e) {
-            Logger.error("Caught RemoteException in recordCurrentLocation", e);
+            JSONArray windowsArray = data.getJSONArray(0);
+            QuietTimeSchedule.Window[] windows = new QuietTimeSchedule.Window[windowsArray.length()];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = readQuietTimeWindow(windowsArray.getJSONObject(i));
+            }
+
+            quietTimeSchedule.set(windows);
+            syncQuietTime(true);
+            settingsWriter.commit(callbackContext);
+        } catch (JSONException e) {
+            Logger.error("Error reading quietTime schedule JSON", e);
+            callbackContext.error("Error reading quietTime schedule JSON");
+        } catch (IllegalArgumentException e) {
+            callbackContext.error("Invalid quietTime schedule: " + e.getMessage());
         }
-        callbackContext.success();
+    }
+
+    void applySettings(JSONArray data, CallbackContext callbackContext) {
+        if (!requirePushServiceEnabled(callbackContext)) {
+            return;
+        }
+
+        // Everything is read and validated before any of it is handed to the
+        // settings writer, so a bad field leaves nothing pending
+        Set<String> tags = null;
+        String alias = null;
+        Boolean soundEnabled = null;
+        Boolean vibrateEnabled = null;
+        Boolean quietTimeEnabled = null;
+        QuietTimeSchedule.Window quietTime = null;
+        try {
+            JSONObject settings = data.getJSONObject(0);
+
+            if (settings.has("tags")) {
+                tags = readTags(settings.getJSONArray("tags"));
+            }
+            if (settings.has("alias")) {
+                alias = settings.getString("alias");
+            }
+            if (settings.has("soundEnabled")) {
+                soundEnabled = settings.getBoolean("soundEnabled");
+            }
+            if (settings.has("vibrateEnabled")) {
+                vibrateEnabled = settings.getBoolean("vibrateEnabled");
+            }
+            if (settings.has("quietTimeEnabled")) {
+                quietTimeEnabled = settings.getBoolean("quietTimeEnabled");
+            }
+            if (settings.has("quietTime")) {
+                JSONObject quietTimeObject = settings.getJSONObject("quietTime");
+                quietTime = new QuietTimeSchedule.Window(QuietTimeSchedule.ALL_DAYS,
+                        quietTimeObject.getInt("startHour") * 60 + quietTimeObject.getInt("startMinute"),
+                        quietTimeObject.getInt("endHour") * 60 + quietTimeObject.getInt("endMinute"));
+            }
+        } catch (JSONException e) {
+            Logger.error("Error reading settings JSON", e);
+            callbackContext.error("Error reading settings JSON");
+            return;
+        } catch (IllegalArgumentException e) {
+            callbackContext.error("Invalid quietTime: " + e.getMessage());
+            return;
+        }
+
+        if (tags != null) {
+            settingsWriter.setTags(tags);
+        }
+        if (alias != null) {
+            settingsWriter.setAlias(alias.equals("") ? null : alias);
+        }
+        if (soundEnabled != null) {
+            settingsWriter.setSoundEnabled(soundEnabled);
+        }
+        if (vibrateEnabled != null) {
+            settingsWriter.setVibrateEnabled(vibrateEnabled);
+        }
+        if (quietTimeEnabled != null) {
+            settingsWriter.setQuietTimeEnabled(quietTimeEnabled);
+        }
+        if (quietTime != null) {
+            setQuietTimeWindow(quietTime);
+        }
+
+        settingsWriter.commit(callbackContext);
+    }
+
+    void recordCurrentLocation(JSONArray data, CallbackContext callbackContext) {
+        if (!requireLocationServiceEnabled(callbackContext)) {
+            return;
+        }
+
+        locationScheduler.request(callbackContext);
     }
 
     // Helpers
 
+    // Reuses the last tags JSON while the cached tag set is unchanged
+    private JSONObject tagsObject() throws JSONException {
+        Set<String> tags = settingsWriter.getTags();
+        synchronized (this) {
+            if (tags != tagsObjectSource) {
+                JSONObject tagsObject = new JSONObject();
+                tagsObject.put("tags", new JSONArray(tags));
+                this.tagsObject = tagsObject;
+                tagsObjectSource = tags;
+            }
+            return tagsObject;
+        }
+    }
+
+    private static Set<String> readTags(JSONArray tagsArray) throws JSONException {
+        HashSet<String> tagSet = new HashSet<String>();
+        for (int i = 0; i < tagsArray.length(); ++i) {
+            tagSet.add(tagsArray.getString(i));
+        }
+        return tagSet;
+    }
+
+    // Replaces the schedule with a single daily window
+    private void setQuietTimeInterval(int startHour, int startMinute, int endHour, int endMinute) {
+        setQuietTimeWindow(new QuietTimeSchedule.Window(QuietTimeSchedule.ALL_DAYS,
+                startHour * 60 + startMinute, endHour * 60 + endMinute));
+    }
+
+    // Replaces the schedule with a single daily window
+    private void setQuietTimeWindow(QuietTimeSchedule.Window window) {
+        quietTimeSchedule.set(new QuietTimeSchedule.Window[] { window });
+        syncQuietTime(true);
+    }
+
+    private static QuietTimeSchedule.Window readQuietTimeWindow(JSONObject windowObject) throws JSONException {
+        int days = QuietTimeSchedule.ALL_DAYS;
+        JSONArray daysArray = windowObject.optJSONArray("days");
+        if (daysArray != null) {
+            days = 0;
+            for (int i = 0; i < daysArray.length(); i++) {
+                int day = daysArray.getInt(i);
+                if (day < 0 || day > 6) {
+                    throw new IllegalArgumentException("day " + day + " out of range");
+                }
+                days |= 1 << day;
+            }
+        }
+
+        return new QuietTimeSchedule.Window(days, windowObject.getInt("startHour") * 60 + windowObject.getInt("startMinute"),
+                windowObject.getInt("endHour") * 60 + windowObject.getInt("endMinute"));
+    }
+
+    private static PushSubscriptions.Subscription readSubscription(JSONObject filterObject) throws JSONException {
+        return new PushSubscriptions.Subscription(filterObject.isNull("id") ? null : filterObject.getString("id"),
+                filterObject.isNull("key") ? null : filterObject.getString("key"),
+                filterObject.isNull("value") ? null : filterObject.getString("value"),
+                filterObject.isNull("alertPrefix") ? null : filterObject.getString("alertPrefix"));
+    }
+
+    // Reads the schedule once, starting from UA's current daily interval
+    private void loadQuietTimeSchedule() {
+        Date[] interval = pushPrefs.getQuietTimeInterval();
+        quietTimeSchedule.load(interval);
+
+        synchronized (this) {
+            syncedQuietTimeWindow = interval != null ? new QuietTimeSchedule.Window(QuietTimeSchedule.ALL_DAYS,
+                    QuietTimeSchedule.minuteOfDay(interval[0]), QuietTimeSchedule.minuteOfDay(interval[1])) : null;
+        }
+        syncQuietTime(false);
+    }
+
+    /**
+     * Points UA's daily quiet time interval at today's window. Does nothing
+     * unless the day changed since the last call, or the window did.
+     *
+     * @param force Queue the interval write even if the window is unchanged,
+     * committed together with the caller's own settings write.
+     */
+    private void syncQuietTime(boolean force) {
+        int today = quietTimeSchedule.dayOfWeek(System.currentTimeMillis());
+        QuietTimeSchedule.Window window;
+
+        synchronized (this) {
+            if (!force && today == syncedQuietTimeDay) {
+                return;
+            }
+            syncedQuietTimeDay = today;
+
+            window = quietTimeSchedule.windowForDay(today);
+            boolean unchanged = window == null ? syncedQuietTimeWindow == null : window.sameTimes(syncedQuietTimeWindow);
+            if (unchanged && !force) {
+                return;
+            }
+            syncedQuietTimeWindow = window;
+        }
+
+        Date[] interval = QuietTimeSchedule.toInterval(window);
+        settingsWriter.setQuietTimeInterval(interval[0], interval[1]);
+        if (!force) {
+            settingsWriter.commit(null);
+        }
+    }
+
+    // Served from the registration cache, read from PushManager once
+    private static String currentApid() {
+        String pushID = registration.getApid();
+        if (pushID == null) {
+            pushID = PushManager.shared().getAPID();
+            registration.seedApid(pushID);
+        }
+        return pushID;
+    }
+
+    private void scheduleQuietTimeSync() {
+        quietTimeHandler.removeCallbacks(quietTimeSyncRunnable);
+        long delay = quietTimeSchedule.millisUntilNextDay(System.currentTimeMillis());
+        quietTimeHandler.postDelayed(quietTimeSyncRunnable, delay + QUIET_TIME_SYNC_SLACK_MS);
+    }
+
+    private boolean inQuietTime() {
+        return pushPrefs.isQuietTimeEnabled() && quietTimeSchedule.isInQuietTime(System.currentTimeMillis());
+    }
+
+    // Today's window, answered from the cached schedule
+    private JSONObject quietTimeObject() throws JSONException {
+        syncQuietTime(false);
+        int today = quietTimeSchedule.dayOfWeek(System.currentTimeMillis());
+        return quietTimeObject(quietTimeSchedule.windowForDay(today));
+    }
+
+    private static JSONObject quietTimeObject(QuietTimeSchedule.Window window) throws JSONException {
+        int startMinute = window != null ? window.startMinute : 0;
+        int endMinute = window != null ? window.endMinute : 0;
+
+        JSONObject quietTimeObject = new JSONObject();
+        quietTimeObject.put("startHour", startMinute / 60);
+        quietTimeObject.put("startMinute", startMinute % 60);
+        quietTimeObject.put("endHour", endMinute / 60);
+        quietTimeObject.put("endMinute", endMinute % 60);
+        return quietTimeObject;
+    }
+
+    private void putSnapshotField(JSONObject snapshot, String field) throws JSONException {
+        if (field.equals("pushEnabled")) {
+            snapshot.put(field, pushPrefs.isPushEnabled());
+        } else if (field.equals("soundEnabled")) {
+            snapshot.put(field, pushPrefs.isSoundEnabled());
+        } else if (field.equals("vibrateEnabled")) {
+            snapshot.put(field, pushPrefs.isVibrateEnabled());
+        } else if (field.equals("quietTimeEnabled")) {
+            snapshot.put(field, pushPrefs.isQuietTimeEnabled());
+        } else if (field.equals("inQuietTime")) {
+            snapshot.put(field, inQuietTime());
+        } else if (field.equals("quietTime")) {
+            snapshot.put(field, quietTimeObject());
+        } else if (field.equals("tags")) {
+            snapshot.put(field, tagsObject().get("tags"));
+        } else if (field.equals("alias")) {
+            String alias = PushManager.shared().getAlias();
+            snapshot.put(field, alias != null ? alias : "");
+        } else if (field.equals("pushID")) {
+            String pushID = currentApid();
+            snapshot.put(field, pushID != null ? pushID : "");
+        } else if (field.equals("locationEnabled")) {
+            // Left out rather than failing the whole snapshot
+            if (config.locationServiceEnabled) {
+                snapshot.put(field, getLocationPrefs().isLocationEnabled());
+            }
+        } else {
+            Logger.warn("Unknown settings snapshot field: " + field);
+        }
+    }
+
+    private long recordStartupStage(String stage, long stageStart) {
+        long now = System.nanoTime();
+        startupTimings.put(stage, (now - stageStart) / 1000000.0);
+        return now;
+    }
+
+    private synchronized LocationPreferences getLocationPrefs() {
+        if (locationPrefs == null) {
+            long start = System.nanoTime();
+            locationPrefs = UALocationManager.shared().getPreferences();
+            recordStartupStage("locationPreferences", start);
+        }
+        return locationPrefs;
+    }
+
+    private void replayPendingEvents() {
+        EventJournal journal = EventJournal.shared();
+        synchronized (pendingEventsLock) {
+            flying = true;
+            if (journal == null) {
+                return;
+            }
+
+            List<EventJournal.Entry> pending = journal.drain();
+            if (!pending.isEmpty()) {
+                Logger.info("Replaying " + pending.size() + " pending events");
+            }
+            for (EventJournal.Entry entry : pending) {
+                (entry.dataLane ? dataDispatcher : eventDispatcher).dispatch(entry.event, entry.data, entry.pushId, 0);
+            }
+        }
+    }
+
+    private void configureEventTransport(String name) {
+        if (EventTransport.CALLBACK.equals(name)) {
+            if (!callbackTransport.hasCallbackContext()) {
+                Logger.warn("No onEvent callback registered, events use loadUrl until one is");
+            }
+            eventDispatcher.setTransport(callbackTransport);
+        } else {
+            if (!EventTransport.LOAD_URL.equals(name)) {
+                Logger.warn("Unknown event transport " + name + ", using " + EventTransport.LOAD_URL);
+                name = EventTransport.LOAD_URL;
+            }
+            eventDispatcher.setTransport(new EventTransport.LoadUrl(webView));
+        }
+
+        eventTransportName = name;
+    }
+
+    private void setPageLoading(boolean loading) {
+        synchronized (this) {
+            if (pageLoading != loading) {
+                pageLoading = loading;
+                updateEventHold();
+            }
+        }
+    }
+
+    // Called with this locked
+    private void updateEventHold() {
+        if (pageLoading || paused || destroyed) {
+            eventDispatcher.hold();
+            dataDispatcher.hold();
+        } else {
+            eventDispatcher.release();
+            dataDispatcher.release();
+        }
+    }
+
+    // Called with pendingEventsLock held. Each event keeps its lane, and its
+    // push ID so a redelivery after a restart is still dropped.
+    private void journalHeldEvents() {
+        EventJournal journal = EventJournal.shared();
+        List<EventDispatcher.Event> held = eventDispatcher.drain();
+        held.addAll(dataDispatcher.drain());
+        if (held.isEmpty()) {
+            return;
+        }
+
+        if (journal == null) {
+            Logger.warn("No event journal, dropping " + held.size() + " held events");
+            return;
+        }
+
+        Logger.info("Journaling " + held.size() + " held events");
+        for (EventDispatcher.Event event : held) {
+            journal.append(event.name, event.data, event.pushID, event.dataLane);
+        }
+    }
+
+    private void applyTuning(PluginConfig config) {
+        eventDispatcher.configure(config.eventBatchSize, config.eventFlushIntervalMs);
+        dataDispatcher.configure(config.dataBatchSize, config.dataFlushIntervalMs);
+        eventDispatcher.configureBuffer(config.eventBufferSize, config.eventOverflowPolicy);
+        dataDispatcher.configureBuffer(config.eventBufferSize, config.eventOverflowPolicy);
+        settingsWriter.setDebounce(config.settingsDebounceMs);
+        configureEventTransport(config.eventTransport);
+        locationScheduler.configure(config.locationMinIntervalMs, config.locationMinDistanceMeters);
+        PushReceiver.recentPushIds.configure(config.duplicateWindow, config.duplicateMaxAgeMs);
+    }
+
+    private boolean requireTakenOff(CallbackContext callbackContext) {
+        if (config == null) {
+            callbackContext.error("takeOff must be called first");
+            return false;
+        }
+
+        return true;
+    }
+
     private boolean requirePushServiceEnabled(CallbackContext callbackContext) {
-        if (!UAirship.shared().getAirshipConfigOptions().pushServiceEnabled) {
+        if (!requireTakenOff(callbackContext)) {
+            return false;
+        }
+
+        if (!config.pushServiceEnabled) {
             Logger.warn("pushServiceEnabled must be enabled in the airshipconfig.properties file");
             callbackContext.error("pushServiceEnabled must be enabled in the airshipconfig.properties file");
             return false;
@@ -537,7 +1594,11 @@ public class PushNotificationPlugin extends CordovaPlugin {
     }
 
     private boolean requireLocationServiceEnabled(CallbackContext callbackContext) {
-        if (!UAirship.shared().getAirshipConfigOptions().locationOptions.locationServiceEnabled) {
+        if (!requireTakenOff(callbackContext)) {
+            return false;
+        }
+
+        if (!config.locationServiceEnabled) {
             Logger.warn("locationServiceEnabled must be enabled in the location.properties file");
             callbackContext.error("locationServiceEnabled must be enabled in the location.properties file");
             return false;
@@ -545,4 +1606,14 @@ public class PushNotificationPlugin extends CordovaPlugin {
 
         return true;
     }
+
+    static class RegisteredAction {
+        final ActionScheduler.Lane lane;
+        final PluginAction action;
+
+        RegisteredAction(ActionScheduler.Lane lane, PluginAction action) {
+            this.lane = lane;
+            this.action = action;
+        }
+    }
 }
@@ -2,12 +2,19 @@ package com.urbanairship.phonegap;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
 
 import com.urbanairship.Logger;
 import com.urbanairship.UAirship;
@@ -16,65 +23,183 @@ import com.urbanairship.push.PushManager;
 public class PushReceiver extends BroadcastReceiver {
 
     // @formatter:off
-    private static final List<String> IGNORED_EXTRAS_KEYS = Arrays.asList(
+    private static final Set<String> IGNORED_EXTRAS_KEYS = new HashSet<String>(Arrays.asList(
         "collapse_key", // c2dm collapse key
         "from", // c2dm sender
         PushManager.EXTRA_NOTIFICATION_ID, // int id of generated
         PushManager.EXTRA_PUSH_ID, // internal UA push id
         PushManager.EXTRA_ALERT // ignore alert
-    );
+    ));
     // @formatter:on
 
+    // Push IDs already raised, so redelivered pushes can be dropped
+    static final RecentPushIds recentPushIds = new RecentPushIds();
+
+    // Filters registered with the subscribe action
+    static final PushSubscriptions subscriptions = new PushSubscriptions();
+
+    // Broadcasts are handled here instead of on the main thread
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "PushReceiver-worker");
+        }
+    });
+
+    // Each worker thread reuses one writer for the push JSON
+    private static final ThreadLocal<JsonWriter> jsonWriter = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter(512);
+        }
+    };
+
     @Override
-    public void onReceive(Context context, Intent intent) {
-        Logger.info("Received intent: " + intent.toString());
+    public void onReceive(final Context context, final Intent intent) {
+        final long receivedAt = System.nanoTime();
+
+        // Keep the broadcast alive until the worker is done with it
+        final PendingResult result = goAsync();
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startedAt = System.nanoTime();
+                boolean failed = false;
+                try {
+                    handleIntent(context, intent, receivedAt);
+                } catch (RuntimeException e) {
+                    failed = true;
+                    Logger.error("Error handling intent", e);
+                } finally {
+                    result.finish();
+                    PushNotificationPlugin.stats.recordBroadcast(intent.getAction(), startedAt - receivedAt, System.nanoTime() - startedAt, failed);
+                }
+            }
+        });
+    }
+
+    private void handleIntent(Context context, Intent intent, long receivedAt) {
+        if (LogLevels.isLoggable(Log.VERBOSE)) {
+            Logger.verbose("Received intent: " + intent.toString());
+        }
+        EventJournal.init(context);
         String action = intent.getAction();
 
         if (action.equals(PushManager.ACTION_PUSH_RECEIVED)) {
-            handlePushReceived(intent);
+            handlePushReceived(intent, receivedAt);
         } else if (action.equals(PushManager.ACTION_NOTIFICATION_OPENED)) {
             handleNotificationOpened(context, intent);
         } else if (action.equals(PushManager.ACTION_REGISTRATION_FINISHED)) {
-            handleRegistrationFinished(intent);
+            handleRegistrationFinished(intent, receivedAt);
         }
     }
 
-    private void handlePushReceived(Intent intent) {
-        int id = intent.getIntExtra(PushManager.EXTRA_NOTIFICATION_ID, 0);
+    private void handlePushReceived(Intent intent, long receivedAt) {
+        // Checked before the extras are read so duplicates cost a single lookup
+        String pushID = intent.getStringExtra(PushManager.EXTRA_PUSH_ID);
+        if (pushID != null && !recentPushIds.add(pushID)) {
+            if (LogLevels.isLoggable(Log.INFO)) {
+                Logger.info("Ignoring duplicate push " + pushID);
+            }
+            return;
+        }
+
         String alert = intent.getStringExtra(PushManager.EXTRA_ALERT);
-        Map<String, String> extras = getNotificationExtras(intent);
+        Bundle extras = intent.getExtras();
+        if (alert == null) {
+            handleDataPush(pushID, extras, receivedAt);
+            return;
+        }
+
+        int id = intent.getIntExtra(PushManager.EXTRA_NOTIFICATION_ID, 0);
+
+        // Pushes no subscription wants never reach the JSON builder
+        List<String> matched = subscriptions.match(alert, extras);
+        if (matched != null && matched.isEmpty()) {
+            if (LogLevels.isLoggable(Log.DEBUG)) {
+                Logger.debug("Push " + pushID + " matches no subscription, not raising it");
+            }
+            PushNotificationPlugin.stats.recordPush(PluginStats.ALERT_PUSH, PluginStats.PushOutcome.FILTERED, System.nanoTime() - receivedAt);
+            return;
+        }
+
+        String notification = getNotificationJson(alert, extras, matched);
+
+        if (LogLevels.isLoggable(Log.INFO)) {
+            Logger.info("Received push notification. Alert: " + alert + ". Payload: " + notification + ". NotificationID=" + id);
+        }
+
+        PushNotificationPlugin.raisePush(pushID, notification, receivedAt);
+        PushNotificationPlugin.stats.recordPush(PluginStats.ALERT_PUSH, PluginStats.PushOutcome.RAISED, System.nanoTime() - receivedAt);
+    }
+
+    /**
+     * Silent pushes go to the native handler first, and are then raised on
+     * the data lane so they never hold up the delivery of alerts.
+     */
+    private void handleDataPush(String pushID, Bundle extras, long receivedAt) {
+        DataPushHandler handler = PushNotificationPlugin.dataPushHandler;
+        if (handler != null && handleNatively(handler, pushID, extras)) {
+            PushNotificationPlugin.stats.recordPush(PluginStats.DATA_PUSH, PluginStats.PushOutcome.HANDLED, System.nanoTime() - receivedAt);
+            return;
+        }
 
-        Logger.info("Received push notification. Alert: " + alert + ". Payload: " + extras + ". NotificationID=" + id);
+        List<String> matched = subscriptions.match(null, extras);
+        if (matched != null && matched.isEmpty()) {
+            PushNotificationPlugin.stats.recordPush(PluginStats.DATA_PUSH, PluginStats.PushOutcome.FILTERED, System.nanoTime() - receivedAt);
+            return;
+        }
+
+        String notification = getNotificationJson(null, extras, matched);
+
+        // Data pushes can arrive in bursts, so they are only logged at debug
+        if (LogLevels.isLoggable(Log.DEBUG)) {
+            Logger.debug("Received data push. Payload: " + notification);
+        }
 
-        PushNotificationPlugin.raisePush(alert, extras);
+        PushNotificationPlugin.raiseDataPush(pushID, notification, receivedAt);
+        PushNotificationPlugin.stats.recordPush(PluginStats.DATA_PUSH, PluginStats.PushOutcome.RAISED, System.nanoTime() - receivedAt);
+    }
+
+    private static boolean handleNatively(DataPushHandler handler, String pushID, Bundle extras) {
+        try {
+            return handler.onDataPush(pushID, extras);
+        } catch (RuntimeException e) {
+            // The push still reaches JavaScript
+            Logger.error("DataPushHandler failed for push " + pushID, e);
+            return false;
+        }
     }
 
     private void handleNotificationOpened(Context context, Intent intent) {
         String alert = intent.getStringExtra(PushManager.EXTRA_ALERT);
         Map<String, String> extras = getNotificationExtras(intent);
 
-        Logger.info("User clicked notification. Message: " + alert + ". Payload: " + extras.toString());
+        if (LogLevels.isLoggable(Log.INFO)) {
+            Logger.info("User clicked notification. Message: " + alert + ". Payload: " + extras.toString());
+        }
 
         Intent launch = context.getPackageManager().getLaunchIntentForPackage(UAirship.getPackageName());
         launch.addCategory(Intent.CATEGORY_LAUNCHER);
         launch.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
 
-        PushNotificationPlugin.incomingAlert = alert;
-        PushNotificationPlugin.incomingExtras = extras;
+        PushNotificationPlugin.incomingNotifications.offer(alert, extras);
 
         context.startActivity(launch);
     }
 
-    private void handleRegistrationFinished(Intent intent) {
+    private void handleRegistrationFinished(Intent intent, long receivedAt) {
         String apid = intent.getStringExtra(PushManager.EXTRA_APID);
         Boolean valid = intent.getBooleanExtra(PushManager.EXTRA_REGISTRATION_VALID, false);
 
-        Logger.info("Registration complete. APID:" + intent.getStringExtra(PushManager.EXTRA_APID) + ". Valid: " + intent.getBooleanExtra(PushManager.EXTRA_REGISTRATION_VALID, false));
+        if (LogLevels.isLoggable(Log.INFO)) {
+            Logger.info("Registration complete. APID:" + apid + ". Valid: " + valid);
+        }
 
-        PushNotificationPlugin.raiseRegistration(valid, apid);
+        PushNotificationPlugin.raiseRegistration(valid, apid, receivedAt);
     }
 
-    private Map<String, String> getNotificationExtras(Intent intent) {
+    static Map<String, String> getNotificationExtras(Intent intent) {
         Map<String, String> extrasMap = new HashMap<String, String>();
 
         for (String key : intent.getExtras().keySet()) {
@@ -85,4 +210,55 @@ public class PushReceiver extends BroadcastReceiver {
 
         return extrasMap;
     }
+
+    /**
+     * Builds the push event JSON, {"message": alert, "extras": {...}}, in a
+     * single pass over the extras. Produces the same document as
+     * getNotificationExtras followed by PushNotificationPlugin.notificationObject
+     * without the intermediate map or JSONObject, with strings also escaped
+     * for inlining in a javascript: URL.
+     */
+    static String getNotificationJson(String alert, Bundle extras) {
+        return getNotificationJson(alert, extras, null);
+    }
+
+    /**
+     * @param subscriptions IDs of the subscriptions the push matched, added as
+     * "subscriptions": [...], or null to leave the field out.
+     */
+    static String getNotificationJson(String alert, Bundle extras, List<String> subscriptions) {
+        JsonWriter writer = jsonWriter.get().reset();
+
+        writer.beginObject();
+        if (alert != null) {
+            writer.name("message").value(alert);
+        }
+
+        writer.name("extras").beginObject();
+        if (extras != null) {
+            for (String key : extras.keySet()) {
+                if (IGNORED_EXTRAS_KEYS.contains(key)) {
+                    continue;
+                }
+
+                // GCM extras are all strings, anything else matches getStringExtra
+                Object value = extras.get(key);
+                writer.name(key).value(value instanceof String ? (String) value : null);
+            }
+        }
+        writer.endObject();
+
+        if (subscriptions != null) {
+            writer.name("subscriptions").beginArray();
+            for (int i = 0; i < subscriptions.size(); i++) {
+                writer.value(subscriptions.get(i));
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+
+        String json = writer.toString();
+        writer.trim();
+        return json;
+    }
 }
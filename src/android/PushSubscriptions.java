@@ -0,0 +1,226 @@
+package com.urbanairship.phonegap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Bundle;
+
+/**
+ * Push subscriptions registered from JavaScript. While there are none every
+ * push is raised. Once there is at least one, only pushes matching a
+ * subscription are raised, tagged with the IDs of the subscriptions they
+ * matched.
+ *
+ * A subscription matches on an extras key, optionally with an exact value,
+ * and/or on an alert prefix. Subscriptions are compiled into an immutable
+ * index whenever they change, keyed by extras key and value, so matching a
+ * push costs one bundle lookup per distinct subscribed key plus one
+ * startsWith per distinct alert prefix, however many subscriptions share
+ * them.
+ */
+class PushSubscriptions {
+
+    // Subscription ID -> subscription, in the order they were added. Guarded by this.
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<String, Subscription>();
+
+    private volatile Index index = new Index(Collections.<Subscription> emptyList());
+
+    private final AtomicLong matchedCount = new AtomicLong();
+    private final AtomicLong filteredCount = new AtomicLong();
+
+    /**
+     * Adds or replaces a subscription.
+     */
+    synchronized void subscribe(Subscription subscription) {
+        subscriptions.put(subscription.id, subscription);
+        index = new Index(new ArrayList<Subscription>(subscriptions.values()));
+    }
+
+    /**
+     * @return false if there was no subscription with the ID.
+     */
+    synchronized boolean unsubscribe(String id) {
+        if (subscriptions.remove(id) == null) {
+            return false;
+        }
+        index = new Index(new ArrayList<Subscription>(subscriptions.values()));
+        return true;
+    }
+
+    /**
+     * Removes every subscription, so every push is raised again.
+     */
+    synchronized void clear() {
+        subscriptions.clear();
+        index = new Index(Collections.<Subscription> emptyList());
+    }
+
+    synchronized int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return null if the push should be raised without subscription IDs
+     * because there are no subscriptions, an empty list if it matches none
+     * and should be dropped, or the IDs of the matching subscriptions.
+     */
+    List<String> match(String alert, Bundle extras) {
+        Index index = this.index;
+        if (index.isEmpty()) {
+            return null;
+        }
+
+        List<String> matched = index.match(alert, extras);
+        if (matched.isEmpty()) {
+            filteredCount.incrementAndGet();
+        } else {
+            matchedCount.incrementAndGet();
+        }
+        return matched;
+    }
+
+    long getMatchedCount() {
+        return matchedCount.get();
+    }
+
+    /**
+     * Number of pushes dropped because they matched no subscription.
+     */
+    long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    static class Subscription {
+        final String id;
+        // null to match on the alert only
+        final String key;
+        // null to match any value of key
+        final String value;
+        // null to match any alert
+        final String alertPrefix;
+
+        /**
+         * @throws IllegalArgumentException if there is no ID, or neither a key
+         * nor an alert prefix.
+         */
+        Subscription(String id, String key, String value, String alertPrefix) {
+            if (id == null || id.length() == 0) {
+                throw new IllegalArgumentException("Subscription needs an id");
+            }
+            if (key == null && alertPrefix == null) {
+                throw new IllegalArgumentException("Subscription needs a key or an alertPrefix");
+            }
+            this.id = id;
+            this.key = key;
+            this.value = key != null ? value : null;
+            this.alertPrefix = alertPrefix;
+        }
+
+        boolean matchesAlert(String alert) {
+            return alertPrefix == null || (alert != null && alert.startsWith(alertPrefix));
+        }
+    }
+
+    private static class Index {
+        // Extras key -> value -> subscriptions, for subscriptions with a value
+        private final Map<String, Map<String, List<Subscription>>> byKeyAndValue = new HashMap<String, Map<String, List<Subscription>>>();
+        // Extras key -> subscriptions matching any value
+        private final Map<String, List<Subscription>> byKey = new HashMap<String, List<Subscription>>();
+        // Every subscribed key, looked up once per push
+        private final String[] keys;
+        // Alert prefix -> subscriptions without a key
+        private final Map<String, List<Subscription>> byAlertPrefix = new HashMap<String, List<Subscription>>();
+        private final String[] alertPrefixes;
+        private final boolean empty;
+
+        Index(List<Subscription> subscriptions) {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.key == null) {
+                    add(byAlertPrefix, subscription.alertPrefix, subscription);
+                } else if (subscription.value == null) {
+                    add(byKey, subscription.key, subscription);
+                } else {
+                    Map<String, List<Subscription>> byValue = byKeyAndValue.get(subscription.key);
+                    if (byValue == null) {
+                        byValue = new HashMap<String, List<Subscription>>();
+                        byKeyAndValue.put(subscription.key, byValue);
+                    }
+                    add(byValue, subscription.value, subscription);
+                }
+            }
+
+            List<String> allKeys = new ArrayList<String>(byKey.keySet());
+            for (String key : byKeyAndValue.keySet()) {
+                if (!byKey.containsKey(key)) {
+                    allKeys.add(key);
+                }
+            }
+            keys = allKeys.toArray(new String[allKeys.size()]);
+            alertPrefixes = byAlertPrefix.keySet().toArray(new String[byAlertPrefix.size()]);
+            empty = subscriptions.isEmpty();
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        List<String> match(String alert, Bundle extras) {
+            List<String> matched = null;
+
+            if (extras != null) {
+                for (String key : keys) {
+                    Object value = extras.get(key);
+                    if (value == null) {
+                        continue;
+                    }
+
+                    matched = collect(matched, byKey.get(key), alert);
+                    Map<String, List<Subscription>> byValue = byKeyAndValue.get(key);
+                    if (byValue != null && value instanceof String) {
+                        matched = collect(matched, byValue.get(value), alert);
+                    }
+                }
+            }
+
+            if (alert != null) {
+                for (String prefix : alertPrefixes) {
+                    if (alert.startsWith(prefix)) {
+                        matched = collect(matched, byAlertPrefix.get(prefix), alert);
+                    }
+                }
+            }
+
+            return matched != null ? matched : Collections.<String> emptyList();
+        }
+
+        private static List<String> collect(List<String> matched, List<Subscription> candidates, String alert) {
+            if (candidates == null) {
+                return matched;
+            }
+
+            for (Subscription subscription : candidates) {
+                if (subscription.matchesAlert(alert)) {
+                    if (matched == null) {
+                        matched = new ArrayList<String>(2);
+                    }
+                    matched.add(subscription.id);
+                }
+            }
+            return matched;
+        }
+
+        private static void add(Map<String, List<Subscription>> map, String key, Subscription subscription) {
+            List<Subscription> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<Subscription>(1);
+                map.put(key, list);
+            }
+            list.add(subscription);
+        }
+    }
+}
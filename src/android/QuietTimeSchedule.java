@@ -0,0 +1,277 @@
+package com.urbanairship.phonegap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.urbanairship.Logger;
+
+/**
+ * Weekly quiet time schedule kept as minute-of-day windows, so checking
+ * whether the device is in quiet time is a few integer comparisons instead of
+ * Calendar arithmetic.
+ *
+ * Urban Airship only knows a single daily interval. The plugin keeps UA's
+ * interval set to today's window (see windowForDay), which only needs a
+ * write when the window changes from one day to the next, at local midnight
+ * (see millisUntilNextDay). UA cannot express
+ * the morning end of an overnight window that started the day before if
+ * today's window differs.
+ *
+ * The schedule is saved to a file in the application's files directory and
+ * read on first use.
+ */
+class QuietTimeSchedule {
+
+    static final String FILE_NAME = "com.urbanairship.phonegap.quiettime";
+
+    // Days are numbered like JavaScript's Date.getDay(), 0 is Sunday
+    static final int ALL_DAYS = 0x7f;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final long ZONE_CHECK_INTERVAL_MS = 60 * 1000L;
+
+    private final File file;
+
+    // Replaced as a whole, never modified
+    private volatile Window[] windows = new Window[0];
+    private boolean loaded = false;
+
+    // Default zone, refreshed at most once per ZONE_CHECK_INTERVAL_MS
+    private volatile TimeZone zone = TimeZone.getDefault();
+    private volatile long zoneCheckedAt = 0;
+
+    QuietTimeSchedule(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the saved schedule. If none was saved, the schedule is a single
+     * daily window taken from Urban Airship's quiet time interval.
+     *
+     * @param interval UA's current interval, or null if none is set.
+     */
+    synchronized void load(Date[] interval) {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (file.exists()) {
+            windows = read();
+        } else if (interval != null) {
+            windows = new Window[] { new Window(ALL_DAYS, minuteOfDay(interval[0]), minuteOfDay(interval[1])) };
+        }
+    }
+
+    /**
+     * Replaces and saves the schedule.
+     */
+    synchronized void set(Window[] windows) {
+        loaded = true;
+        this.windows = windows.clone();
+        write();
+    }
+
+    Window[] getWindows() {
+        return windows.clone();
+    }
+
+    /**
+     * @return Whether the given time falls in any window of the schedule.
+     * Windows that cross midnight count for the day they start on.
+     */
+    boolean isInQuietTime(long now) {
+        long local = now + zoneAt(now).getOffset(now);
+        long day = floorDiv(local, MILLIS_PER_DAY);
+        int minute = (int) ((local - day * MILLIS_PER_DAY) / 60000);
+        int dayOfWeek = dayOfEpochDay(day);
+        int previousDay = (dayOfWeek + 6) % 7;
+
+        for (Window window : windows) {
+            if (window.startMinute <= window.endMinute) {
+                if (window.hasDay(dayOfWeek) && minute >= window.startMinute && minute < window.endMinute) {
+                    return true;
+                }
+            } else if ((window.hasDay(dayOfWeek) && minute >= window.startMinute)
+                    || (window.hasDay(previousDay) && minute < window.endMinute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Day of week of the given time in the default zone, 0 is Sunday.
+     */
+    int dayOfWeek(long now) {
+        return dayOfEpochDay(floorDiv(now + zoneAt(now).getOffset(now), MILLIS_PER_DAY));
+    }
+
+    /**
+     * @return Milliseconds from the given time to the next local midnight.
+     */
+    long millisUntilNextDay(long now) {
+        long local = now + zoneAt(now).getOffset(now);
+        return (floorDiv(local, MILLIS_PER_DAY) + 1) * MILLIS_PER_DAY - local;
+    }
+
+    /**
+     * @return The first window starting on the given day, or null if there is
+     * none.
+     */
+    Window windowForDay(int dayOfWeek) {
+        for (Window window : windows) {
+            if (window.hasDay(dayOfWeek)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a window to the Date interval Urban Airship expects. Only the
+     * hour and minute of the dates are used. A null window gives an empty
+     * interval.
+     */
+    static Date[] toInterval(Window window) {
+        Calendar start = new GregorianCalendar();
+        Calendar end = new GregorianCalendar();
+        int startMinute = window != null ? window.startMinute : 0;
+        int endMinute = window != null ? window.endMinute : 0;
+
+        start.set(Calendar.HOUR_OF_DAY, startMinute / 60);
+        start.set(Calendar.MINUTE, startMinute % 60);
+        end.set(Calendar.HOUR_OF_DAY, endMinute / 60);
+        end.set(Calendar.MINUTE, endMinute % 60);
+        return new Date[] { start.getTime(), end.getTime() };
+    }
+
+    static int minuteOfDay(Date date) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(date);
+        return calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+    }
+
+    private TimeZone zoneAt(long now) {
+        if (now - zoneCheckedAt > ZONE_CHECK_INTERVAL_MS || now < zoneCheckedAt) {
+            zone = TimeZone.getDefault();
+            zoneCheckedAt = now;
+        }
+        return zone;
+    }
+
+    // 1970-01-01 was a Thursday
+    private static int dayOfEpochDay(long epochDay) {
+        return (int) (((epochDay + 4) % 7 + 7) % 7);
+    }
+
+    private static long floorDiv(long a, long b) {
+        long quotient = a / b;
+        return (a % b != 0 && (a < 0) != (b < 0)) ? quotient - 1 : quotient;
+    }
+
+    private Window[] read() {
+        List<Window> read = new ArrayList<Window>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Window window = Window.fromLine(line);
+                if (window != null) {
+                    read.add(window);
+                }
+            }
+        } catch (IOException e) {
+            Logger.error("Unable to read quiet time schedule", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return read.toArray(new Window[read.size()]);
+    }
+
+    private void write() {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8");
+            for (Window window : windows) {
+                writer.write(window.toLine());
+            }
+        } catch (IOException e) {
+            Logger.error("Unable to save quiet time schedule", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    static class Window {
+        // Bit n set for day n, 0 is Sunday
+        final int days;
+        final int startMinute;
+        final int endMinute;
+
+        /**
+         * @throws IllegalArgumentException if the days or minutes are out of
+         * range.
+         */
+        Window(int days, int startMinute, int endMinute) {
+            if (days <= 0 || days > ALL_DAYS || startMinute < 0 || startMinute >= MINUTES_PER_DAY
+                    || endMinute < 0 || endMinute >= MINUTES_PER_DAY) {
+                throw new IllegalArgumentException("Invalid quiet time window");
+            }
+            this.days = days;
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        boolean hasDay(int dayOfWeek) {
+            return (days & (1 << dayOfWeek)) != 0;
+        }
+
+        boolean sameTimes(Window other) {
+            return other != null && startMinute == other.startMinute && endMinute == other.endMinute;
+        }
+
+        String toLine() {
+            return days + "\t" + startMinute + "\t" + endMinute + "\n";
+        }
+
+        static Window fromLine(String line) {
+            String[] parts = line.split("\t");
+            if (parts.length != 3) {
+                return null;
+            }
+
+            try {
+                return new Window(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
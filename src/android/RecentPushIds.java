@@ -0,0 +1,104 @@
+package com.urbanairship.phonegap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
+
+/**
+ * Bounded, time-limited record of recently received push IDs, used to drop
+ * pushes that GCM redelivers. Holds at most maxEntries IDs, evicting the least
+ * recently seen, and forgets an ID once it is older than maxAgeMs.
+ *
+ * GCM redelivers a push when the device reconnects, which can be long after
+ * the first delivery, so the default holds an hour of pushes at a sustained
+ * burst rate rather than just the last few. Each entry is a short string and
+ * a Long, so the default costs well under 100KB when full.
+ */
+class RecentPushIds {
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+    static final long DEFAULT_MAX_AGE_MS = 60 * 60 * 1000L;
+
+    // Guarded by this
+    private int maxEntries;
+    private long maxAgeMs;
+
+    // Push ID -> elapsedRealtime when first seen, least recently seen first. Guarded by this.
+    private final LinkedHashMap<String, Long> seen;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    RecentPushIds() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MS);
+    }
+
+    RecentPushIds(int maxEntries, long maxAgeMs) {
+        this.maxEntries = maxEntries;
+        this.maxAgeMs = maxAgeMs;
+        this.seen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > RecentPushIds.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Changes the limits, evicting the least recently seen IDs if there are
+     * now too many.
+     */
+    synchronized void configure(int maxEntries, long maxAgeMs) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+
+        Iterator<String> ids = seen.keySet().iterator();
+        while (seen.size() > this.maxEntries && ids.hasNext()) {
+            ids.next();
+            ids.remove();
+        }
+    }
+
+    /**
+     * Records a push ID.
+     *
+     * @return false if the ID was already seen within maxAgeMs.
+     */
+    boolean add(String pushId) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            Long firstSeen = seen.get(pushId);
+            if (firstSeen != null && now - firstSeen <= maxAgeMs) {
+                hitCount.incrementAndGet();
+                return false;
+            }
+            seen.put(pushId, now);
+        }
+
+        missCount.incrementAndGet();
+        return true;
+    }
+
+    synchronized int size() {
+        return seen.size();
+    }
+
+    /**
+     * Number of pushes dropped as duplicates.
+     */
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Number of pushes with an ID that was not seen recently.
+     */
+    long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.urbanairship.phonegap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last registration result seen by the receiver. Every tag or alias update
+ * re-registers with UA and finishes with the same APID, so the registration
+ * event is only raised when the APID or its validity changes. The APID of the
+ * last valid registration also answers getPushID without going to
+ * PushManager.
+ *
+ * Kept in memory only: the first registration in a process is always raised,
+ * since a new process also means a new WebView. A new page within the same
+ * process calls reset so it sees the next registration too.
+ */
+class RegistrationCache {
+
+    // Last registration raised, guarded by this
+    private boolean raised = false;
+    private boolean valid;
+    private String apid;
+
+    private volatile String validApid;
+
+    private final AtomicLong changeCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+
+    /**
+     * Records a finished registration.
+     *
+     * @return true if it differs from the last registration and should be
+     * raised.
+     */
+    synchronized boolean update(boolean valid, String apid) {
+        if (valid) {
+            validApid = apid;
+        }
+
+        if (raised && this.valid == valid && (apid == null ? this.apid == null : apid.equals(this.apid))) {
+            unchangedCount.incrementAndGet();
+            return false;
+        }
+
+        raised = true;
+        this.valid = valid;
+        this.apid = apid;
+        changeCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets the last raised registration so the next one is raised again.
+     * The cached APID is kept.
+     */
+    synchronized void reset() {
+        raised = false;
+    }
+
+    /**
+     * @return The APID of the last valid registration, or null if there has
+     * not been one in this process.
+     */
+    String getApid() {
+        return validApid;
+    }
+
+    /**
+     * Caches an APID read from PushManager until a registration replaces it.
+     */
+    synchronized void seedApid(String apid) {
+        if (validApid == null) {
+            validApid = apid;
+        }
+    }
+
+    long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Number of registrations not raised because nothing changed.
+     */
+    long getUnchangedCount() {
+        return unchangedCount.get();
+    }
+}
@@ -0,0 +1,361 @@
+package com.urbanairship.phonegap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cordova.CallbackContext;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.urbanairship.Logger;
+import com.urbanairship.push.PushManager;
+import com.urbanairship.push.PushPreferences;
+
+/**
+ * Merges tag, alias and preference writes and applies them in a single
+ * flush on the write lane. Writes made before a flush runs replace earlier
+ * values for the same setting. The flush then skips values that match what
+ * is already stored, and sends tags and alias in one registration update.
+ *
+ * A flush is scheduled when the first write arrives. It runs after the
+ * debounce window, or as soon as the write lane reaches it if there is no
+ * window. Either way, writes already queued on the lane are coalesced. The
+ * callbacks of every merged write are called once the flush has run.
+ *
+ * The device's tag set is cached so tag reads and deltas do not go back to
+ * PushManager each time. The cache is dropped whenever a registration event
+ * arrives.
+ */
+class SettingsWriter {
+
+    private final ActionScheduler scheduler;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile long debounceMs = 0;
+
+    // Pending values, guarded by this. null means unchanged.
+    private Set<String> tags;
+    private boolean aliasSet = false;
+    private String alias;
+    private Boolean soundEnabled;
+    private Boolean vibrateEnabled;
+    private Boolean quietTimeEnabled;
+    private Date[] quietTimeInterval;
+    private List<CallbackContext> callbacks = new ArrayList<CallbackContext>();
+    private boolean flushScheduled = false;
+
+    // Last known tags on the device, unmodifiable. Guarded by this.
+    private Set<String> cachedTags;
+
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong registrationUpdateCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable submitFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            submitFlush();
+        }
+    };
+
+    SettingsWriter(ActionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setDebounce(long debounceMs) {
+        this.debounceMs = Math.max(0, debounceMs);
+    }
+
+    synchronized SettingsWriter setTags(Set<String> tags) {
+        this.tags = tags;
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Adds tags to the pending tag set, or to the current tags if no tag
+     * write is pending.
+     *
+     * @return false if every tag is already present, in which case nothing
+     * is written.
+     */
+    synchronized boolean addTags(Collection<String> tags) {
+        Set<String> base = this.tags != null ? this.tags : getTags();
+        if (base.containsAll(tags)) {
+            return false;
+        }
+
+        Set<String> updated = new HashSet<String>(base);
+        updated.addAll(tags);
+        setTags(updated);
+        return true;
+    }
+
+    /**
+     * Removes tags from the pending tag set, or from the current tags if no
+     * tag write is pending.
+     *
+     * @return false if none of the tags are present, in which case nothing is
+     * written.
+     */
+    synchronized boolean removeTags(Collection<String> tags) {
+        Set<String> base = this.tags != null ? this.tags : getTags();
+        Set<String> updated = new HashSet<String>(base);
+        if (!updated.removeAll(tags)) {
+            return false;
+        }
+
+        setTags(updated);
+        return true;
+    }
+
+    /**
+     * @return The device's current tags, loaded from PushManager only when
+     * the cache is empty.
+     */
+    synchronized Set<String> getTags() {
+        if (cachedTags == null) {
+            Set<String> tags = PushManager.shared().getTags();
+            cachedTags = Collections.unmodifiableSet(tags != null ? new HashSet<String>(tags) : new HashSet<String>());
+        }
+        return cachedTags;
+    }
+
+    synchronized void invalidateTags() {
+        cachedTags = null;
+    }
+
+    synchronized SettingsWriter setAlias(String alias) {
+        this.alias = alias;
+        this.aliasSet = true;
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    synchronized SettingsWriter setSoundEnabled(boolean enabled) {
+        this.soundEnabled = enabled;
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    synchronized SettingsWriter setVibrateEnabled(boolean enabled) {
+        this.vibrateEnabled = enabled;
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    synchronized SettingsWriter setQuietTimeEnabled(boolean enabled) {
+        this.quietTimeEnabled = enabled;
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    synchronized SettingsWriter setQuietTimeInterval(Date start, Date end) {
+        this.quietTimeInterval = new Date[] { start, end };
+        requestedCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Schedules a flush if needed. Call once all of a request's values are
+     * set. The callback, if not null, is called once the pending values have
+     * been applied.
+     */
+    synchronized void commit(CallbackContext callbackContext) {
+        if (callbackContext != null) {
+            callbacks.add(callbackContext);
+        }
+        if (flushScheduled) {
+            return;
+        }
+
+        flushScheduled = true;
+        if (debounceMs > 0) {
+            handler.postDelayed(submitFlushRunnable, debounceMs);
+        } else {
+            submitFlush();
+        }
+    }
+
+    long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    /**
+     * Number of requested writes that did not need their own PushManager or
+     * PushPreferences call.
+     */
+    long getCoalescedCount() {
+        return requestedCount.get() - appliedCount.get();
+    }
+
+    long getRegistrationUpdateCount() {
+        return registrationUpdateCount.get();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    private void submitFlush() {
+        if (!scheduler.submit(ActionScheduler.Lane.WRITE, flushRunnable)) {
+            // The lane is full or shut down, fail the pending writes
+            List<CallbackContext> pending;
+            synchronized (this) {
+                pending = takePending();
+            }
+            for (CallbackContext callbackContext : pending) {
+                callbackContext.error("Unable to apply settings, plugin is busy or shut down");
+            }
+        }
+    }
+
+    private void flush() {
+        Set<String> tags;
+        boolean aliasSet;
+        String alias;
+        Boolean soundEnabled;
+        Boolean vibrateEnabled;
+        Boolean quietTimeEnabled;
+        Date[] quietTimeInterval;
+        List<CallbackContext> pending;
+
+        synchronized (this) {
+            tags = this.tags;
+            aliasSet = this.aliasSet;
+            alias = this.alias;
+            soundEnabled = this.soundEnabled;
+            vibrateEnabled = this.vibrateEnabled;
+            quietTimeEnabled = this.quietTimeEnabled;
+            quietTimeInterval = this.quietTimeInterval;
+            pending = takePending();
+        }
+
+        flushCount.incrementAndGet();
+
+        try {
+            PushManager pushManager = PushManager.shared();
+            PushPreferences pushPrefs = pushManager.getPreferences();
+
+            boolean tagsChanged = tags != null && !tags.equals(getTags());
+            boolean aliasChanged = aliasSet && !equals(alias, pushManager.getAlias());
+
+            if (tagsChanged && aliasChanged) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings alias: " + alias + ", tags: " + tags);
+                }
+                pushManager.setAliasAndTags(alias, tags);
+                cacheTags(tags);
+                applied(2, true);
+            } else if (tagsChanged) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings tags: " + tags);
+                }
+                pushManager.setTags(tags);
+                cacheTags(tags);
+                applied(1, true);
+            } else if (aliasChanged) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings alias: " + alias);
+                }
+                pushManager.setAlias(alias);
+                applied(1, true);
+            }
+
+            if (soundEnabled != null && soundEnabled != pushPrefs.isSoundEnabled()) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings Sound: " + soundEnabled);
+                }
+                pushPrefs.setSoundEnabled(soundEnabled);
+                applied(1, false);
+            }
+
+            if (vibrateEnabled != null && vibrateEnabled != pushPrefs.isVibrateEnabled()) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings Vibrate: " + vibrateEnabled);
+                }
+                pushPrefs.setVibrateEnabled(vibrateEnabled);
+                applied(1, false);
+            }
+
+            if (quietTimeEnabled != null && quietTimeEnabled != pushPrefs.isQuietTimeEnabled()) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings QuietTime: " + quietTimeEnabled);
+                }
+                pushPrefs.setQuietTimeEnabled(quietTimeEnabled);
+                applied(1, false);
+            }
+
+            if (quietTimeInterval != null) {
+                if (LogLevels.isLoggable(Log.INFO)) {
+                    Logger.info("Settings QuietTime. Start: " + quietTimeInterval[0] + ", End: " + quietTimeInterval[1]);
+                }
+                pushPrefs.setQuietTimeInterval(quietTimeInterval[0], quietTimeInterval[1]);
+                applied(1, false);
+            }
+        } catch (RuntimeException e) {
+            Logger.error("Error applying settings", e);
+            for (CallbackContext callbackContext : pending) {
+                callbackContext.error("Error applying settings");
+            }
+            return;
+        }
+
+        if (pending.size() > 1 && LogLevels.isLoggable(Log.DEBUG)) {
+            Logger.debug("Applied " + pending.size() + " settings writes in one flush");
+        }
+
+        for (CallbackContext callbackContext : pending) {
+            callbackContext.success();
+        }
+    }
+
+    // Must hold this
+    private List<CallbackContext> takePending() {
+        List<CallbackContext> pending = callbacks;
+        callbacks = new ArrayList<CallbackContext>();
+        tags = null;
+        aliasSet = false;
+        alias = null;
+        soundEnabled = null;
+        vibrateEnabled = null;
+        quietTimeEnabled = null;
+        quietTimeInterval = null;
+        flushScheduled = false;
+        return pending;
+    }
+
+    private synchronized void cacheTags(Set<String> tags) {
+        cachedTags = Collections.unmodifiableSet(new HashSet<String>(tags));
+    }
+
+    private void applied(int writes, boolean registrationUpdate) {
+        appliedCount.addAndGet(writes);
+        if (registrationUpdate) {
+            registrationUpdateCount.incrementAndGet();
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -49,9 +49,39 @@ PushNotification.prototype.registerForNotificationTypes = function (types, callb
 // Top level enabling/disabling
 
 PushNotification.prototype.takeOff = function (callback) {
+  if(device.platform == "Android") {
+    // Used when the com.urbanairship.event_transport preference is "callback"
+    this.call_native(this.fireEvents, "onEvent");
+  }
   this.call_native(callback, "takeOff");
 }
 
+PushNotification.prototype.fireEvents = function (batch) {
+  var events = JSON.parse(batch)
+  for(var i = 0; i < events.length; i++) {
+    try {
+      cordova.fireDocumentEvent(events[i][0], events[i][1])
+    } catch(e) {
+      console.log("exception firing event " + events[i][0] + " from native")
+    }
+  }
+}
+
+PushNotification.prototype.onDataPush = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(function (batch) {
+      var events = JSON.parse(batch)
+      for(var i = 0; i < events.length; i++) {
+        try {
+          callback(events[i][1])
+        } catch(e) {
+          console.log("exception handling data push from native")
+        }
+      }
+    }, "onDataPush")
+  }
+}
+
 PushNotification.prototype.enablePush = function (callback) {
   this.call_native(callback, "enablePush");
 }
@@ -116,6 +146,60 @@ PushNotification.prototype.getIncoming = function (callback) {
   this.call_native(callback, "getIncoming");
 }
 
+PushNotification.prototype.getIncomingBatch = function (max, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "getIncomingBatch", [max]);
+  }
+}
+
+PushNotification.prototype.reconfigure = function (options, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "reconfigure", [options]);
+  }
+}
+
+PushNotification.prototype.setLogLevel = function (level, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "setLogLevel", [level]);
+  }
+}
+
+PushNotification.prototype.getStats = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "getStats");
+  }
+}
+
+PushNotification.prototype.resetStats = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "resetStats");
+  }
+}
+
+PushNotification.prototype.getStartupTimings = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "getStartupTimings");
+  }
+}
+
+PushNotification.prototype.getDuplicateStats = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "getDuplicateStats");
+  }
+}
+
+PushNotification.prototype.subscribe = function (filter, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "subscribe", [filter])
+  }
+}
+
+PushNotification.prototype.unsubscribe = function (id, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "unsubscribe", [id])
+  }
+}
+
 PushNotification.prototype.getPushID = function (callback) {
   this.call_native(callback, "getPushID")
 }
@@ -124,6 +208,22 @@ PushNotification.prototype.getQuietTime = function (callback) {
   this.call_native(callback, "getQuietTime");
 }
 
+PushNotification.prototype.getQuietTimeSchedule = function (callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "getQuietTimeSchedule");
+  }
+}
+
+PushNotification.prototype.getSettingsSnapshot = function (fields, callback) {
+  if(arguments.length == 1) {
+    callback = fields
+    fields = []
+  }
+  if(device.platform == "Android") {
+    this.call_native(callback, "getSettingsSnapshot", [fields]);
+  }
+}
+
 PushNotification.prototype.getTags = function (callback) {
   this.call_native(callback, "getTags");
 }
@@ -142,6 +242,18 @@ PushNotification.prototype.setTags = function (tags, callback) {
   this.call_native(callback, "setTags", [tags])
 }
 
+PushNotification.prototype.addTags = function (tags, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "addTags", [tags])
+  }
+}
+
+PushNotification.prototype.removeTags = function (tags, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "removeTags", [tags])
+  }
+}
+
 PushNotification.prototype.setSoundEnabled = function (bool, callback) {
   if(device.platform == "Android") {
     this.call_native(callback, "setSoundEnabled", [bool])
@@ -162,6 +274,18 @@ PushNotification.prototype.setQuietTime = function (startHour, startMinute, endH
   this.call_native(callback, "setQuietTime", [startHour, startMinute, endHour, endMinute])
 }
 
+PushNotification.prototype.setQuietTimeSchedule = function (windows, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "setQuietTimeSchedule", [windows])
+  }
+}
+
+PushNotification.prototype.applySettings = function (settings, callback) {
+  if(device.platform == "Android") {
+    this.call_native(callback, "applySettings", [settings])
+  }
+}
+
 PushNotification.prototype.setAutobadgeEnabled = function (enabled, callback) {
   if (this.isPlatformIOS()) {
     this.call_native(callback, "setAutobadgeEnabled", [enabled]);